@@ -35,8 +35,11 @@ import com.sk89q.worldedit.bukkit.WorldEditPlugin;
 
 import de.beimax.simplespleef.admin.SimpleSpleefAdmin;
 import de.beimax.simplespleef.command.SimpleSpleefCommandExecutor;
+import de.beimax.simplespleef.game.BlockMutationQueue;
 import de.beimax.simplespleef.game.GameHandler;
 import de.beimax.simplespleef.game.OriginalPositionKeeper;
+import de.beimax.simplespleef.game.arenarestoring.ArenaRecovery;
+import de.beimax.simplespleef.game.arenarestoring.ArenaSnapshotWriter;
 import de.beimax.simplespleef.listeners.*;
 import de.beimax.simplespleef.util.ConfigHelper;
 import de.beimax.simplespleef.util.Translator;
@@ -103,6 +106,30 @@ public class SimpleSpleef extends JavaPlugin {
 		return gameHandler;
 	}
 
+	/**
+	 * recovery of arenas after a crash
+	 */
+	private static ArenaRecovery arenaRecovery;
+
+	/**
+	 * @return the arenaRecovery
+	 */
+	public static ArenaRecovery getArenaRecovery() {
+		return arenaRecovery;
+	}
+
+	/**
+	 * block changes of asynchronous workers
+	 */
+	private static BlockMutationQueue blockMutationQueue;
+
+	/**
+	 * @return the blockMutationQueue
+	 */
+	public static BlockMutationQueue getBlockMutationQueue() {
+		return blockMutationQueue;
+	}
+
 	/**
 	 * world edit API
 	 */
@@ -159,6 +186,7 @@ public class SimpleSpleef extends JavaPlugin {
 	private SimpleSpleefBlockListener blockListener;
 	private SimpleSpleefPlayerListener playerListener;
 	private SimpleSpleefEntityListener entityListener;
+	private SimpleSpleefWorldListener worldListener;
 	
 	/**
 	 * Called when enabling plugin
@@ -179,6 +207,14 @@ public class SimpleSpleef extends JavaPlugin {
 		// create new handlers
 		SimpleSpleef.gameHandler = new GameHandler();
 		this.admin = new SimpleSpleefAdmin();
+
+		// restore arenas left over after a crash
+		SimpleSpleef.arenaRecovery = new ArenaRecovery(this.getConfig().getInt("settings.recoveryTickBudget", 20));
+		SimpleSpleef.arenaRecovery.start();
+
+		// write block changes of asynchronous workers in the main thread
+		SimpleSpleef.blockMutationQueue = new BlockMutationQueue(this.getConfig().getInt("settings.blockChangesPerTick", 500));
+		SimpleSpleef.blockMutationQueue.start();
 		
 		// register vault stuff
 		setupEconomy();
@@ -196,9 +232,14 @@ public class SimpleSpleef extends JavaPlugin {
 	 */
 	public void onDisable() {
 		log.info(this.toString() + " is shutting down.");
+		// write pending block changes
+		if (SimpleSpleef.blockMutationQueue != null)
+			SimpleSpleef.blockMutationQueue.stop();
+		SimpleSpleef.blockMutationQueue = null;
 		// clean memory
 		SimpleSpleef.worldEditAPI = null;
 		SimpleSpleef.gameHandler = null;
+		SimpleSpleef.arenaRecovery = null;
 		SimpleSpleef.economy = null;
 		SimpleSpleef.originalPositionKeeper = null;
 		this.admin = null;
@@ -207,6 +248,8 @@ public class SimpleSpleef extends JavaPlugin {
 		this.entityListener = null;
 		this.blockListener = null;
 		this.commandExecutor = null;
+		// stop snapshot encoder threads
+		ArenaSnapshotWriter.shutdown();
 		//TODO add if more stuff comes along
 
 		//save config to disk
@@ -289,12 +332,14 @@ public class SimpleSpleef extends JavaPlugin {
 		this.blockListener = new SimpleSpleefBlockListener();
 		this.entityListener = new SimpleSpleefEntityListener();
 		this.playerListener = new SimpleSpleefPlayerListener();
+		this.worldListener = new SimpleSpleefWorldListener();
 
 		// Register our events
 		pm.registerEvents(pluginListener, this);
 		pm.registerEvents(blockListener, this);
 		pm.registerEvents(entityListener, this);
 		pm.registerEvents(playerListener, this);
+		pm.registerEvents(worldListener, this);
 	}
 
 	/**
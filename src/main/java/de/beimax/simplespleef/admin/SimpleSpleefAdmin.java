@@ -38,6 +38,7 @@ import com.sk89q.worldedit.regions.Region;
 import de.beimax.simplespleef.SimpleSpleef;
 import de.beimax.simplespleef.command.SimpleSpleefCommandExecutor;
 import de.beimax.simplespleef.game.Game;
+import de.beimax.simplespleef.game.arenarestoring.ArenaSnapshotCache;
 import de.beimax.simplespleef.util.ConfigHelper;
 import de.beimax.simplespleef.util.LocationHelper;
 
@@ -310,6 +311,8 @@ public class SimpleSpleefAdmin {
 
 		// ok, now delete arena config
 		SimpleSpleef.getPlugin().getConfig().set("arenas." + id, null);
+		// forget cached snapshot
+		ArenaSnapshotCache.invalidate(id);
 
 		// save configuration now
 		SimpleSpleef.getPlugin().saveConfig();
@@ -355,6 +358,8 @@ public class SimpleSpleefAdmin {
 		mySection.set("enabled", true);
 		// create section with location stuff - block which the player is standing on
 		mySection.createSection(aOrB, LocationHelper.getXYZLocation(((Player) sender).getLocation().getBlock().getRelative(BlockFace.DOWN).getLocation()));
+		// arena has changed, so cached snapshot is invalid
+		ArenaSnapshotCache.invalidate(arena);
 		
 		// save config to file
 		SimpleSpleef.getPlugin().saveConfig();
@@ -420,6 +425,8 @@ public class SimpleSpleefAdmin {
 		// create section with location stuff - selected blocks
 		mySection.createSection("a", LocationHelper.getXYZLocation(new Location(world, minP.getX(), minP.getY(), minP.getZ())));
 		mySection.createSection("b", LocationHelper.getXYZLocation(new Location(world, maxP.getX(), maxP.getY(), maxP.getZ())));
+		// arena has changed, so cached snapshot is invalid
+		ArenaSnapshotCache.invalidate(arena);
 
 		// save config to file
 		SimpleSpleef.getPlugin().saveConfig();
@@ -480,6 +487,8 @@ public class SimpleSpleefAdmin {
 	 */
 	protected void reloadConfig(CommandSender sender) {
 		SimpleSpleef.getPlugin().reloadSimpleSpleefConfiguration();
+		// arenas might have changed
+		ArenaSnapshotCache.clear();
 		sender.sendMessage(ChatColor.GREEN + SimpleSpleef.getPlugin().ll("adminfeedback.reload"));
 	}
 
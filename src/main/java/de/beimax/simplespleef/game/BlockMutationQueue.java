@@ -0,0 +1,217 @@
+/**
+ * This file is part of the SimpleSpleef bukkit plugin.
+ * Copyright (C) 2011 Maximilian Kalus
+ * See http://dev.bukkit.org/server-mods/simple-spleef/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package de.beimax.simplespleef.game;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import de.beimax.simplespleef.SimpleSpleef;
+
+/**
+ * Queue of block changes decided by asynchronous workers (floor workers, block degenerator) - the world may only be
+ * changed in the main thread, so the queue is drained by a synchronous task each tick.
+ * @author mkalus
+ *
+ */
+public class BlockMutationQueue implements Runnable {
+	/**
+	 * notified in the main thread after a queued change has been written
+	 */
+	public interface MutationListener {
+		/**
+		 * @param block changed block
+		 * @param oldType type of block before the change
+		 * @param oldData data of block before the change
+		 */
+		public void blockChanged(Block block, int oldType, byte oldData);
+	}
+
+	/**
+	 * intended block change
+	 */
+	private static class Mutation {
+		private final Game game;
+		private final World world;
+		private final int x;
+		private final int y;
+		private final int z;
+		private final int typeId;
+		private final byte data;
+		private final MutationListener listener;
+
+		public Mutation(Game game, World world, int x, int y, int z, int typeId, byte data, MutationListener listener) {
+			this.game = game;
+			this.world = world;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.typeId = typeId;
+			this.data = data;
+			this.listener = listener;
+		}
+	}
+
+	/**
+	 * queued changes
+	 */
+	private final ConcurrentLinkedQueue<Mutation> queue = new ConcurrentLinkedQueue<Mutation>();
+
+	/**
+	 * number of queued changes per game - counters are kept once created, there is only one game per arena
+	 */
+	private final ConcurrentHashMap<Game, AtomicInteger> pending = new ConcurrentHashMap<Game, AtomicInteger>();
+
+	/**
+	 * maximum number of changes written per tick (0 or less writes all)
+	 */
+	private final int batchSize;
+
+	/**
+	 * id of the scheduler
+	 */
+	private int schedulerId = -1;
+
+	/**
+	 * Constructor
+	 * @param batchSize maximum number of changes written per tick
+	 */
+	public BlockMutationQueue(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * start draining the queue every tick
+	 */
+	public void start() {
+		schedulerId = SimpleSpleef.getPlugin().getServer().getScheduler().scheduleSyncRepeatingTask(SimpleSpleef.getPlugin(), this, 0L, 1L);
+	}
+
+	/**
+	 * stop draining the queue and write what is left - called in the main thread
+	 */
+	public void stop() {
+		if (schedulerId != -1)
+			SimpleSpleef.getPlugin().getServer().getScheduler().cancelTask(schedulerId);
+		schedulerId = -1;
+		drain(0);
+	}
+
+	/**
+	 * write all changes still queued for a game right away - called in the main thread when the game ends,
+	 * so the changes are written (and tracked) before the arena is restored
+	 * @param game
+	 */
+	public void flush(Game game) {
+		Iterator<Mutation> it = queue.iterator();
+		while (it.hasNext()) {
+			Mutation mutation = it.next();
+			if (mutation.game == game) {
+				it.remove();
+				write(mutation);
+			}
+		}
+	}
+
+	/**
+	 * @param game
+	 * @return true, if there are changes of the game waiting to be written
+	 */
+	public boolean hasPending(Game game) {
+		if (game == null) return false;
+		AtomicInteger counter = pending.get(game);
+		return counter != null && counter.get() > 0;
+	}
+
+	/**
+	 * queue a block change - may be called from any thread
+	 * @param game game the change belongs to
+	 * @param world
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param typeId new type
+	 * @param data new data
+	 * @param listener notified after the change has been written (may be null)
+	 */
+	public void enqueue(Game game, World world, int x, int y, int z, int typeId, byte data, MutationListener listener) {
+		if (world == null) return; // no NPEs
+		if (game != null) { // count before queueing, so the counter never drops below zero
+			AtomicInteger counter = pending.get(game);
+			if (counter == null) {
+				AtomicInteger newCounter = new AtomicInteger();
+				counter = pending.putIfAbsent(game, newCounter);
+				if (counter == null) counter = newCounter;
+			}
+			counter.incrementAndGet();
+		}
+		queue.add(new Mutation(game, world, x, y, z, typeId, data, listener));
+	}
+
+	/**
+	 * @return number of changes waiting to be written
+	 */
+	public int size() {
+		return queue.size();
+	}
+
+	@Override
+	public void run() {
+		drain(batchSize);
+	}
+
+	/**
+	 * write queued changes
+	 * @param max maximum number of changes to write (0 or less writes all)
+	 */
+	private void drain(int max) {
+		int written = 0;
+		Mutation mutation;
+		while ((max <= 0 || written < max) && (mutation = queue.poll()) != null) {
+			write(mutation);
+			written++;
+		}
+	}
+
+	/**
+	 * write a single change and notify its listener
+	 * @param mutation
+	 */
+	private void write(Mutation mutation) {
+		if (mutation.game != null) pending.get(mutation.game).decrementAndGet();
+		Block block = mutation.world.getBlockAt(mutation.x, mutation.y, mutation.z);
+		// get old data
+		int oldType = block.getTypeId();
+		byte oldData = block.getData();
+		// type and data in one update, so physics never sees the wrong data value
+		block.setTypeIdAndData(mutation.typeId, mutation.data, true);
+		// notify listener
+		if (mutation.listener != null) {
+			try {
+				mutation.listener.blockChanged(block, oldType, oldData);
+			} catch (Exception e) {
+				SimpleSpleef.log.warning("[SimpleSpleef] Error while notifying block change: " + e.getMessage());
+			}
+		}
+	}
+}
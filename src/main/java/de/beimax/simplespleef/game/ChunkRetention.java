@@ -0,0 +1,163 @@
+/**
+ * This file is part of the SimpleSpleef bukkit plugin.
+ * Copyright (C) 2011 Maximilian Kalus
+ * See http://dev.bukkit.org/server-mods/simple-spleef/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package de.beimax.simplespleef.game;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+
+import de.beimax.simplespleef.util.Cuboid;
+
+/**
+ * Keeps the chunks of games (arena, floor, spawns) loaded from the announcement of a game until its arena has been
+ * restored, so no chunks have to be loaded in the middle of a game or restore.
+ * @author mkalus
+ *
+ */
+public class ChunkRetention {
+	/**
+	 * number of games retaining each chunk: world name -> chunk key -> count
+	 */
+	private final Map<String, Map<Long, Integer>> retained = new HashMap<String, Map<Long, Integer>>();
+
+	/**
+	 * chunks retained by each game: game id -> list of chunks
+	 */
+	private final Map<String, List<RetainedChunk>> games = new HashMap<String, List<RetainedChunk>>();
+
+	/**
+	 * retain and load all chunks of a cuboid
+	 * @param game id of game
+	 * @param cuboid
+	 */
+	public void retain(String game, Cuboid cuboid) {
+		if (cuboid == null) return;
+		int[] coords = cuboid.getCoords();
+		for (int x = coords[0] >> 4; x <= coords[3] >> 4; x++)
+			for (int z = coords[2] >> 4; z <= coords[5] >> 4; z++)
+				retain(game, cuboid.getWorld(), x, z);
+	}
+
+	/**
+	 * retain and load chunk of a location
+	 * @param game id of game
+	 * @param location
+	 */
+	public void retain(String game, Location location) {
+		if (location == null || location.getWorld() == null) return;
+		retain(game, location.getWorld(), location.getBlockX() >> 4, location.getBlockZ() >> 4);
+	}
+
+	/**
+	 * retain and load a chunk
+	 * @param game id of game
+	 * @param world
+	 * @param chunkX
+	 * @param chunkZ
+	 */
+	public synchronized void retain(String game, World world, int chunkX, int chunkZ) {
+		Long key = getKey(chunkX, chunkZ);
+		Map<Long, Integer> worldChunks = retained.get(world.getName());
+		if (worldChunks == null) {
+			worldChunks = new HashMap<Long, Integer>();
+			retained.put(world.getName(), worldChunks);
+		}
+		Integer count = worldChunks.get(key);
+		worldChunks.put(key, count == null ? 1 : count + 1);
+
+		List<RetainedChunk> gameChunks = games.get(game);
+		if (gameChunks == null) {
+			gameChunks = new LinkedList<RetainedChunk>();
+			games.put(game, gameChunks);
+		}
+		gameChunks.add(new RetainedChunk(world.getName(), key));
+
+		// pre-load chunk now, not in the middle of the game
+		if (!world.isChunkLoaded(chunkX, chunkZ))
+			world.loadChunk(chunkX, chunkZ);
+	}
+
+	/**
+	 * release all chunks retained by a game - they may be unloaded by the server again
+	 * @param game id of game
+	 */
+	public synchronized void release(String game) {
+		List<RetainedChunk> gameChunks = games.remove(game);
+		if (gameChunks == null) return;
+		for (RetainedChunk chunk : gameChunks) {
+			Map<Long, Integer> worldChunks = retained.get(chunk.world);
+			if (worldChunks == null) continue;
+			Integer count = worldChunks.get(chunk.key);
+			if (count == null) continue;
+			if (count <= 1) worldChunks.remove(chunk.key);
+			else worldChunks.put(chunk.key, count - 1);
+		}
+	}
+
+	/**
+	 * @param world
+	 * @param chunkX
+	 * @param chunkZ
+	 * @return true, if the chunk is retained by a game
+	 */
+	public synchronized boolean isRetained(World world, int chunkX, int chunkZ) {
+		Map<Long, Integer> worldChunks = retained.get(world.getName());
+		return worldChunks != null && worldChunks.containsKey(getKey(chunkX, chunkZ));
+	}
+
+	/**
+	 * @param chunkX
+	 * @param chunkZ
+	 * @return key of chunk
+	 */
+	private static long getKey(int chunkX, int chunkZ) {
+		return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * chunk retained by a game - immutable
+	 * @author mkalus
+	 *
+	 */
+	private static final class RetainedChunk {
+		/**
+		 * name of world
+		 */
+		private final String world;
+
+		/**
+		 * key of chunk
+		 */
+		private final Long key;
+
+		/**
+		 * Constructor
+		 * @param world
+		 * @param key
+		 */
+		public RetainedChunk(String world, Long key) {
+			this.world = world;
+			this.key = key;
+		}
+	}
+}
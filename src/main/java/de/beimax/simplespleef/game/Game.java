@@ -18,6 +18,7 @@
  **/
 package de.beimax.simplespleef.game;
 
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.ConfigurationSection;
@@ -349,6 +350,11 @@ public abstract class Game {
 	 * cleaning routine called at end of game
 	 */
 	public abstract void clean();
+
+	/**
+	 * retain chunks of the game (arena, floor, spawns) until the game is over and the arena has been restored
+	 */
+	public abstract void retainChunks();
 	
 	/**
 	 * check whether a certain block may be broken
@@ -358,4 +364,16 @@ public abstract class Game {
 	 * @return true, if block may be destroyed
 	 */
 	public abstract boolean checkMayBreakBlock(Block block);
+
+	/**
+	 * check whether a certain block may be broken - same as above, without a Block object
+	 * @param world
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param typeId type of block
+	 * @param data data of block
+	 * @return true, if block may be destroyed
+	 */
+	public abstract boolean checkMayBreakBlock(World world, int x, int y, int z, int typeId, byte data);
 }
@@ -18,12 +18,15 @@
  **/
 package de.beimax.simplespleef.game;
 
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.UUID;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
@@ -59,6 +62,21 @@ public class GameHandler {
 	 * List of cuboids for arenas - help check arena protection
 	 */
 	private List<Cuboid> arenaCubes;
+
+	/**
+	 * keeps chunks of games loaded
+	 */
+	private final ChunkRetention chunkRetention = new ChunkRetention();
+
+	/**
+	 * index of players to the games they are playing - updated by the games
+	 */
+	private final ConcurrentHashMap<UUID, Membership> playerIndex = new ConcurrentHashMap<UUID, Membership>();
+
+	/**
+	 * index of spectators to the games they are watching - updated by the games
+	 */
+	private final ConcurrentHashMap<UUID, Membership> spectatorIndex = new ConcurrentHashMap<UUID, Membership>();
 	
 	/**
 	 * Constructor
@@ -68,6 +86,13 @@ public class GameHandler {
 		updateGameHandlerData();
 	}
 	
+	/**
+	 * @return chunk retention of games
+	 */
+	public ChunkRetention getChunkRetention() {
+		return chunkRetention;
+	}
+
 	/**
 	 * Initialize game handler - mainly read arena cubes and update game data
 	 */
@@ -305,6 +330,11 @@ public class GameHandler {
 			sender.sendMessage(ChatColor.DARK_RED + SimpleSpleef.getPlugin().ll("errors.arenaDisabled", "[ARENA]", arena));
 			return null;
 		}
+		// check if arena is still being recovered after a crash
+		if (SimpleSpleef.getArenaRecovery() != null && SimpleSpleef.getArenaRecovery().isRecovering(arena)) {
+			sender.sendMessage(ChatColor.DARK_RED + SimpleSpleef.getPlugin().ll("errors.arenaRecovering", "[ARENA]", arena));
+			return null;
+		}
 		game = createNewGame(arena);
 		// announce new game globally?
 		if (SimpleSpleef.getPlugin().getConfig().getBoolean("settings.announceGame", true))
@@ -331,9 +361,10 @@ public class GameHandler {
 				return;
 			}
 			// do players have the right to join unstarted games?
-			if (SimpleSpleef.getPlugin().getConfig().getBoolean("arenas." + arena + ".announceOnJoin", true))
+			if (SimpleSpleef.getPlugin().getConfig().getBoolean("arenas." + arena + ".announceOnJoin", true)) {
 				game = announce(sender, arena);
-			else { // tell player that he may not announce game
+				if (game == null) return; // could not announce game
+			} else { // tell player that he may not announce game
 				sender.sendMessage(ChatColor.DARK_RED + SimpleSpleef.getPlugin().ll("errors.announceBeforeJoin", "[ARENA]", arena));
 				return;
 			}
@@ -567,11 +598,7 @@ public class GameHandler {
 	 * @return Game the player is part of or null, if not
 	 */
 	public Game checkPlayerInGame(Player player) {
-		if (player == null) return null; // sanity check
-		for (Game checkGame :  getGames()) {
-			if (checkGame.hasPlayer(player)) return checkGame;
-		}
-		return null;
+		return lookup(playerIndex, player);
 	}
 	
 	/**
@@ -580,11 +607,80 @@ public class GameHandler {
 	 * @return Game the player is part of or null, if not
 	 */
 	public Game checkSpectatorInGame(Player player) {
+		return lookup(spectatorIndex, player);
+	}
+
+	/**
+	 * called by a game when a player has joined it
+	 * @param game
+	 * @param player
+	 */
+	public void addPlayerToIndex(Game game, Player player) {
+		if (player != null) playerIndex.put(player.getUniqueId(), new Membership(player, game));
+	}
+
+	/**
+	 * called by a game when a player has been removed from it
+	 * @param game
+	 * @param player
+	 */
+	public void removePlayerFromIndex(Game game, Player player) {
+		remove(playerIndex, game, player);
+	}
+
+	/**
+	 * called by a game when a player has started watching it
+	 * @param game
+	 * @param player
+	 */
+	public void addSpectatorToIndex(Game game, Player player) {
+		if (player != null) spectatorIndex.put(player.getUniqueId(), new Membership(player, game));
+	}
+
+	/**
+	 * called by a game when a player has stopped watching it
+	 * @param game
+	 * @param player
+	 */
+	public void removeSpectatorFromIndex(Game game, Player player) {
+		remove(spectatorIndex, game, player);
+	}
+
+	/**
+	 * look up game of player in index
+	 * @param index
+	 * @param player
+	 * @return game or null
+	 */
+	private Game lookup(ConcurrentHashMap<UUID, Membership> index, Player player) {
 		if (player == null) return null; // sanity check
-		for (Game checkGame :  getGames()) {
-			if (checkGame.hasSpectator(player)) return checkGame;
-		}
-		return null;
+		Membership membership = index.get(player.getUniqueId());
+		// a player logging in again is a new player object and not part of the game any more
+		if (membership == null || membership.player != player) return null;
+		return membership.game;
+	}
+
+	/**
+	 * remove player from index, if he/she is registered for the game
+	 * @param index
+	 * @param game
+	 * @param player
+	 */
+	private void remove(ConcurrentHashMap<UUID, Membership> index, Game game, Player player) {
+		if (player == null) return; // sanity check
+		Membership membership = index.get(player.getUniqueId());
+		if (membership != null && membership.game == game) index.remove(player.getUniqueId(), membership);
+	}
+
+	/**
+	 * remove all players and spectators of a game from the indexes
+	 * @param game
+	 */
+	private void removeGameFromIndex(Game game) {
+		for (Iterator<Membership> it = playerIndex.values().iterator(); it.hasNext();)
+			if (it.next().game == game) it.remove();
+		for (Iterator<Membership> it = spectatorIndex.values().iterator(); it.hasNext();)
+			if (it.next().game == game) it.remove();
 	}
 	
 	/**
@@ -598,6 +694,8 @@ public class GameHandler {
 		Game game = GameFactory.createGame(type, arena);
 		// define configuration section for this game
 		game.defineSettings(SimpleSpleef.getPlugin().getConfig().getConfigurationSection("arenas." + game.getId()));
+		// pre-load chunks of game and keep them loaded until the arena has been restored
+		game.retainChunks();
 		// add game to list
 		addGame(game);
 		// return newly created game
@@ -713,6 +811,7 @@ public class GameHandler {
 		for (Game game : getGames()) {
 			// redefine settings
 			game.defineSettings(SimpleSpleef.getPlugin().getConfig().getConfigurationSection("arenas." + game.getId()));
+			game.retainChunks();
 		}
 	}
 
@@ -723,8 +822,12 @@ public class GameHandler {
 	public void gameOver(Game game) {
 		// call cleaning routine of game
 		game.clean();
+		// players are not part of the game any more
+		removeGameFromIndex(game);
 		// remove game from active list
 		removeGame(game);
+		// arena has been restored - chunks may be unloaded again
+		chunkRetention.release(game.getId());
 	}
 	
 	/**
@@ -741,4 +844,31 @@ public class GameHandler {
 	 
 	    return (WorldGuardPlugin) plugin;
 	}
+
+	/**
+	 * entry of player indexes
+	 * @author mkalus
+	 *
+	 */
+	private static class Membership {
+		/**
+		 * player object registered
+		 */
+		private final Player player;
+
+		/**
+		 * game of player
+		 */
+		private final Game game;
+
+		/**
+		 * Constructor
+		 * @param player
+		 * @param game
+		 */
+		public Membership(Player player, Game game) {
+			this.player = player;
+			this.game = game;
+		}
+	}
 }
@@ -25,6 +25,7 @@ import net.milkbowl.vault.economy.EconomyResponse;
 import org.bukkit.ChatColor;
 import org.bukkit.GameMode;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
@@ -37,6 +38,7 @@ import org.bukkit.inventory.*;
 
 import de.beimax.simplespleef.SimpleSpleef;
 import de.beimax.simplespleef.game.arenarestoring.ArenaRestorer;
+import de.beimax.simplespleef.game.arenarestoring.AutoRestorer;
 import de.beimax.simplespleef.game.arenarestoring.HardArenaRestorer;
 import de.beimax.simplespleef.game.arenarestoring.SoftRestorer;
 import de.beimax.simplespleef.game.floortracking.FloorWorker;
@@ -143,7 +145,12 @@ public class GameStandard extends Game {
 	/**
 	 * blocks that can be dug or (if allowDigBlocks is false) cannot
 	 */
-	private LinkedList<ItemStack> digBlocks;
+	private BlockMatcher digBlocks;
+
+	/**
+	 * blocks that ready players when clicked
+	 */
+	private BlockMatcher readyBlocks;
 
 	/**
 	 * Constructor
@@ -196,17 +203,12 @@ public class GameStandard extends Game {
 		// block destruction/keep hashes
 		if (conf.isList("allowDigBlocks")) {
 			allowDigBlocks = true;
-			digBlocks = new LinkedList<ItemStack>();
-			for (String line : conf.getStringList("allowDigBlocks")) {
-				digBlocks.add(MaterialHelper.getItemStackFromString(line, true));
-			}
+			digBlocks = MaterialHelper.compileMatcher(conf.getStringList("allowDigBlocks"));
 		} else if (conf.isList("disallowDigBlocks")) {
 			allowDigBlocks = false;
-			digBlocks = new LinkedList<ItemStack>();
-			for (String line : conf.getStringList("disallowDigBlocks")) {
-				digBlocks.add(MaterialHelper.getItemStackFromString(line, true));
-			}
+			digBlocks = MaterialHelper.compileMatcher(conf.getStringList("disallowDigBlocks"));
 		} else digBlocks = null; // delete previous settings
+		readyBlocks = MaterialHelper.compileMatcher(conf.getString("readyBlockMaterial", null));
 
 		// get dig settings
 		String dig = conf.getString("diggingIfArenaUndefined", "floorOnly").toLowerCase();
@@ -247,8 +249,12 @@ public class GameStandard extends Game {
 				floorTracker = new FloorTracker();
 				floorTracker.setArenaFloorDissolvesAfter(arenaFloorDissolvesAfter);
 				floorTracker.setArenaFloorRepairsAfter(arenaFloorRepairsAfter);
-				floorTracker.setArenaFloorDissolveTick(configuration.getInt("arenaFloorDissolveTick", 5));
-				floorTracker.setArenaFloorRepairTick(configuration.getInt("arenaFloorRepairTick", 10));
+				// rates in blocks per second - default to one block per tick time of older configurations
+				int dissolveTick = configuration.getInt("arenaFloorDissolveTick", 5);
+				int repairTick = configuration.getInt("arenaFloorRepairTick", 10);
+				floorTracker.setArenaFloorDissolveRate(configuration.getDouble("arenaFloorDissolveRate", dissolveTick > 0 ? 1.0 / dissolveTick : 1.0));
+				floorTracker.setArenaFloorRepairRate(configuration.getDouble("arenaFloorRepairRate", repairTick > 0 ? 1.0 / repairTick : 1.0));
+				floorTracker.setArenaFloorDissolvePattern(configuration.getString("arenaFloorDissolvePattern", "random"));
 			} else
 				floorTracker = null; // none is needed to track floor
 		} else floorTracker = null; // no floor, no floor tracker!		
@@ -261,7 +267,7 @@ public class GameStandard extends Game {
 		if (configuration == null) playerOnBlockDegenerator = null; // fix NPE
 		
 		int blockDegeneration = configuration .getInt("blockDegeneration", -1);
-		if (blockDegeneration >= 0) playerOnBlockDegenerator = new PlayerOnBlockDegenerator(blockDegeneration, configuration.getStringList("degeneratingBlocks"), floorTracker);
+		if (blockDegeneration >= 0) playerOnBlockDegenerator = new PlayerOnBlockDegenerator(blockDegeneration, configuration.getInt("blockDegenerationPerPlayer", 1), configuration.getStringList("degeneratingBlocks"), this, floorTracker);
 		else playerOnBlockDegenerator = null;		
 	}
 	
@@ -306,6 +312,7 @@ public class GameStandard extends Game {
 			player.sendMessage(ChatColor.DARK_RED + "Internal error while joining occured! Please tell the SimpleSpleef creator!");
 			return false;
 		}
+		SimpleSpleef.getGameHandler().addPlayerToIndex(this, player);
 		// unready game, if needed
 		if (supportsReady()) {
 			this.status = Game.STATUS_NEW;
@@ -362,6 +369,7 @@ public class GameStandard extends Game {
 		if (isJoinable() || isReady()) { //still joinable or ready state - not so bad!
 			// just remove spleefer
 			spleefers.removeSpleefer(player);
+			SimpleSpleef.getGameHandler().removePlayerFromIndex(this, player);
 		} else if (countdown != null) { // during countdown - end the game...
 			// set player to lost, so that the player is not teleported twice
 			spleefers.setLost(player);
@@ -555,14 +563,15 @@ public class GameStandard extends Game {
 		if (countdown != null)
 			countdown.interrupted = true;
 
+		// if degeneration keeper is on, stop it first, so it does not queue any more block changes
+		if (playerOnBlockDegenerator != null)
+			playerOnBlockDegenerator.stopBlockDegenerator();
+
 		// if floor tracker is on, delete it and renew it
 		if (floorTracker != null)
-			floorTracker.stopTracking();
+			floorTracker.stopTracking(); // writes changes still queued for this game
+		else SimpleSpleef.getBlockMutationQueue().flush(this); // no tracker, but changes must be written before restoring
 		renewFloorTracker(); // renew the tracker
-
-		// if degeneration keeper is on, delete and renew it
-		if (playerOnBlockDegenerator != null)
-			playerOnBlockDegenerator.stopBlockDegenerator();
 		renewPlayerOnBlockGenerator(); // renew the degenerator
 
 		// change game status
@@ -612,6 +621,7 @@ public class GameStandard extends Game {
 		player.teleport(teleportTo);
 		// add to spectator list
 		spectators.add(player);
+		SimpleSpleef.getGameHandler().addSpectatorToIndex(this, player);
 		// send message to player
 		player.sendMessage(ChatColor.GREEN + SimpleSpleef.getPlugin().ll("feedback.watch", "[ARENA]", getName()));
 		return true;
@@ -658,6 +668,7 @@ public class GameStandard extends Game {
 		if (!spectators.contains(player)) return false;
 		// remove from spectator list
 		spectators.remove(player);
+		SimpleSpleef.getGameHandler().removeSpectatorFromIndex(this, player);
 		return true;
 	}
 
@@ -849,7 +860,7 @@ public class GameStandard extends Game {
 		if (playerOnBlockDegenerator != null && isInGame()) {
 			// get block player is standing on
 			Block block = player.getLocation().getBlock().getRelative(BlockFace.DOWN);
-			if (block != null && checkMayBreakBlockLocation(block)) // only degenerate blocks that are within the arena/floor
+			if (block != null && checkMayBreakBlockLocation(block.getWorld(), block.getX(), block.getY(), block.getZ())) // only degenerate blocks that are within the arena/floor
 				playerOnBlockDegenerator.updatePlayer(player);
 		}
 	}
@@ -889,15 +900,8 @@ public class GameStandard extends Game {
 		} else
 		//check if player clicked on a "ready" block (e.g. iron block) and the game is readyable
 			if (supportsBlockReady() && isJoinable()) {
-				ItemStack readyBlockMaterial;
-				try {
-					readyBlockMaterial = MaterialHelper.getItemStackFromString(configuration.getString("readyBlockMaterial", null), true);
-				} catch (Exception e) {
-					return; // ignore exceptions
-				}
-				if (readyBlockMaterial == null) return; // ignore null materials
-				// material has been checked, now test, if clicked block is of the same material
-				if (readyBlockMaterial.getTypeId() == block.getTypeId() && MaterialHelper.isSameBlockType(block, readyBlockMaterial)) {
+				// test, if clicked block is of the ready material
+				if (readyBlocks.matches(block)) {
 					ready(event.getPlayer(), true);
 				}
 			}
@@ -983,8 +987,8 @@ public class GameStandard extends Game {
 		} else floorBroken = true; // block was broken
 
 		// if there is a floor tracker running, tell it about the change
-		if (floorTracker != null && floorBroken)
-			updateTrackers(block, oldType, oldData);
+		if (floorTracker != null && floorBroken) // block might not have been broken yet, but it will turn into air
+			updateTrackers(block, Material.AIR.getId(), (byte) 0, oldType, oldData);
 	}
 	
 	@Override
@@ -1365,8 +1369,9 @@ public class GameStandard extends Game {
 		// everything ok -> teleport player
 		Location teleportTo = LocationHelper.configToExactLocation(configuration.getConfigurationSection(spawn + "Spawn"));
 		if (teleportTo == null) SimpleSpleef.log.warning("[SimpleSpleef] Teleport error - location was null!");
-		// load chunk, if needed
-		teleportTo.getWorld().loadChunk(teleportTo.getChunk());
+		// load chunk, if needed - chunks of spawns are retained while the game lasts, so this should not happen often
+		if (!teleportTo.getWorld().isChunkLoaded(teleportTo.getBlockX() >> 4, teleportTo.getBlockZ() >> 4))
+			teleportTo.getWorld().loadChunk(teleportTo.getBlockX() >> 4, teleportTo.getBlockZ() >> 4);
 		// add player to teleport ok list
 		this.teleportOkList.add(player);
 		player.teleport(teleportTo);
@@ -1383,21 +1388,30 @@ public class GameStandard extends Game {
 	public boolean checkMayBreakBlock(Block block) {
 		// sanity check
 		if (block == null) return true;
+		return checkMayBreakBlock(block.getWorld(), block.getX(), block.getY(), block.getZ(), block.getTypeId(), block.getData());
+	}
+
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.game.Game#checkMayBreakBlock(org.bukkit.World, int, int, int, int, byte)
+	 */
+	@Override
+	public boolean checkMayBreakBlock(World world, int x, int y, int z, int typeId, byte data) {
 		// joined players may not break blocks as long as game has not started
 		if (!isInGame()) return false;
-		return checkMayBreakBlockMaterial(block) && checkMayBreakBlockLocation(block);
+		return checkMayBreakBlockMaterial(typeId, data) && checkMayBreakBlockLocation(world, x, y, z);
 	}
 	
 	/**
 	 * helper function for the above checkMayBreakBlock method to check the material of a block
-	 * @param block
+	 * @param typeId
+	 * @param data
 	 * @return
 	 */
-	protected boolean checkMayBreakBlockMaterial(Block block) {
+	protected boolean checkMayBreakBlockMaterial(int typeId, byte data) {
 		// allowed blocks? => allowDigBlocks
 		// alternatively: disallowDigBlocks
 		if (digBlocks != null) {
-			if (MaterialHelper.isSameBlockType(block, digBlocks)) return allowDigBlocks; // found -> return state
+			if (digBlocks.matches(typeId, data)) return allowDigBlocks; // found -> return state
 			else // not found
 				return !allowDigBlocks; // negate
 		}
@@ -1406,18 +1420,20 @@ public class GameStandard extends Game {
 	
 	/**
 	 * helper function for the above checkMayBreakBlock method to check the location of a block
-	 * @param block
+	 * @param world
+	 * @param x
+	 * @param y
+	 * @param z
 	 * @return
 	 */
-	protected boolean checkMayBreakBlockLocation(Block block) {
-		Location blockLocation = block.getLocation();
+	protected boolean checkMayBreakBlockLocation(World world, int x, int y, int z) {
 		// is arena undefined?
 		if (arena == null) {
 			switch (diggingIfArenaUndefined) {
 			case GameStandard.DIGGING_NONE: return false; // digging is not allowed
 			case GameStandard.DIGGING_EVERYWHERE: return true; // digging is allowed everywhere
 			default: // allowed in the arena floor in all other cases
-				return this.floor.contains(blockLocation);
+				return inCuboid(this.floor, world, x, y, z);
 			}
 		} else { // arena defined
 			// is floor undefined?
@@ -1425,15 +1441,27 @@ public class GameStandard extends Game {
 				switch (diggingIfFloorUndefined) {
 				case GameStandard.DIGGING_NONE: return false; // digging is not allowed
 				case GameStandard.DIGGING_EVERYWHERE: return true; // digging is allowed everywhere
-				case GameStandard.DIGGING_OUTSIDE_ARENA: return !this.arena.contains(blockLocation); // digging is allowed outside of arena
+				case GameStandard.DIGGING_OUTSIDE_ARENA: return !inCuboid(this.arena, world, x, y, z); // digging is allowed outside of arena
 				default: // allowed within the arena in other cases
-					return this.arena.contains(blockLocation);
+					return inCuboid(this.arena, world, x, y, z);
 				}
 			} else { // floor and arena defined
-				return this.floor.contains(blockLocation); // only arena floor can be broken during game
+				return inCuboid(this.floor, world, x, y, z); // only arena floor can be broken during game
 			}
 		}
 	}
+
+	/**
+	 * @param cuboid
+	 * @param world
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return true, if the block is within the cuboid (and its world)
+	 */
+	private boolean inCuboid(Cuboid cuboid, World world, int x, int y, int z) {
+		return cuboid.getWorld() == world && cuboid.contains(x, y, z);
+	}
 	
 	/**
 	 * update the trackers when blocks are changed
@@ -1445,6 +1473,19 @@ public class GameStandard extends Game {
 		if (floorTracker != null)
 			floorTracker.updateBlock(newBlock, oldType, oldData);
 	}
+
+	/**
+	 * update the trackers when blocks are changed
+	 * @param block - block changed
+	 * @param newType - new type of block
+	 * @param newData - new data of block
+	 * @param oldType - old type of block
+	 * @param oldData - old data of block
+	 */
+	protected void updateTrackers(Block block, int newType, byte newData, int oldType, byte oldData) {
+		if (floorTracker != null)
+			floorTracker.updateBlock(block, newType, newData, oldType, oldData);
+	}
 	
 	/**
 	 * save arena information, if setting restoreArenaAfterGame has been set
@@ -1463,10 +1504,10 @@ public class GameStandard extends Game {
 		else type = "soft"; // fall back
 		
 		if (type.equals("arenahard")) { // hard arena restorer
-			arenaRestorer = new HardArenaRestorer();
+			arenaRestorer = new HardArenaRestorer(configuration.getInt("restoreArenaTickBudget", 10));
 			arenaRestorer.saveArena(this, arena);
 		} else if (type.equals("floorhard")) { // hard floor restorer
-			arenaRestorer = new HardArenaRestorer();
+			arenaRestorer = new HardArenaRestorer(configuration.getInt("restoreArenaTickBudget", 10));
 			arenaRestorer.saveArena(this, floor);
 		} else { // soft restorer
 			Cuboid possibleFloor = floor==null?arena:floor;
@@ -1475,8 +1516,11 @@ public class GameStandard extends Game {
 				return; // freestyle spleefing does not implement any floor
 			}
 
-			// create soft restorer
-			arenaRestorer = new SoftRestorer();
+			// create soft restorer - or automatic restorer that switches to a snapshot when too many blocks change
+			if (type.equals("auto"))
+				arenaRestorer = new AutoRestorer(configuration.getInt("restoreArenaMinBlocksPerTick", 10), configuration.getInt("restoreArenaMaxBlocksPerTick", 1000),
+						configuration.getInt("restoreArenaTickBudget", 10), configuration.getDouble("restoreArenaAutoThreshold", 0.25));
+			else arenaRestorer = new SoftRestorer(configuration.getInt("restoreArenaMinBlocksPerTick", 10), configuration.getInt("restoreArenaMaxBlocksPerTick", 1000));
 			arenaRestorer.saveArena(this, possibleFloor);
 
 			if (floorTracker == null) // create floor tracker, if needed
@@ -1506,6 +1550,24 @@ public class GameStandard extends Game {
 		} else arenaRestorer.restoreArena(); // restore right away
 	}
 
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.game.Game#retainChunks()
+	 */
+	@Override
+	public void retainChunks() {
+		ChunkRetention retention = SimpleSpleef.getGameHandler().getChunkRetention();
+		retention.release(getId()); // settings may have changed
+		retention.retain(getId(), arena);
+		retention.retain(getId(), floor);
+		retention.retain(getId(), lose);
+		// enabled spawns
+		if (configuration == null) return;
+		for (String key : configuration.getKeys(false)) {
+			if (key.endsWith("Spawn") && configuration.isConfigurationSection(key) && configuration.getBoolean(key + ".enabled", false))
+				retention.retain(getId(), LocationHelper.configToExactLocation(configuration.getConfigurationSection(key)));
+		}
+	}
+
 	@Override
 	public void clean() {
 		// dereference stuff
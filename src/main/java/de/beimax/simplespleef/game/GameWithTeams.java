@@ -9,11 +9,12 @@ import java.util.Random;
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
 import org.bukkit.block.Block;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 import org.bukkit.event.player.PlayerInteractEvent;
-import org.bukkit.inventory.ItemStack;
 
 import de.beimax.simplespleef.SimpleSpleef;
+import de.beimax.simplespleef.util.BlockMatcher;
 import de.beimax.simplespleef.util.LocationHelper;
 import de.beimax.simplespleef.util.MaterialHelper;
 
@@ -22,6 +23,16 @@ import de.beimax.simplespleef.util.MaterialHelper;
  *
  */
 public class GameWithTeams extends GameStandard {
+	/**
+	 * blocks to click in order to join the red team
+	 */
+	private BlockMatcher redBlocks;
+
+	/**
+	 * blocks to click in order to join the blue team
+	 */
+	private BlockMatcher blueBlocks;
+
 	/**
 	 * Constructor
 	 * @param name
@@ -29,6 +40,30 @@ public class GameWithTeams extends GameStandard {
 	public GameWithTeams(String name) {
 		super(name);
 	}
+
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.game.GameStandard#defineSettings(org.bukkit.configuration.ConfigurationSection)
+	 */
+	@Override
+	public void defineSettings(ConfigurationSection conf) {
+		super.defineSettings(conf);
+		// compile team block materials
+		redBlocks = compileTeamBlocks(conf.getString("teamBlockMaterialRed", null), "teamBlockMaterialRed");
+		blueBlocks = compileTeamBlocks(conf.getString("teamBlockMaterialBlue", null), "teamBlockMaterialBlue");
+	}
+
+	/**
+	 * compile team block material
+	 * @param line config line
+	 * @param key config key for warnings
+	 * @return matcher
+	 */
+	private BlockMatcher compileTeamBlocks(String line, String key) {
+		BlockMatcher matcher = MaterialHelper.compileMatcher(line);
+		if (line != null && matcher.isEmpty())
+			SimpleSpleef.log.warning("[SimpleSpleef] Could not parse " + key + " in arena " + getId());
+		return matcher;
+	}
 	
 	@Override
 	public String getType() {
@@ -151,27 +186,11 @@ public class GameWithTeams extends GameStandard {
 		if (block == null || event.getPlayer() == null) return; // ignore null blocks and null players
 
 		if (isJoinable() && configuration.getBoolean("teamCommand", true)) {
-			// get blocks
-			ItemStack redBlockMaterial;
-			try {
-				redBlockMaterial = MaterialHelper.getItemStackFromString(configuration.getString("teamBlockMaterialRed", null), true);
-			} catch (Exception e) {
-				SimpleSpleef.log.warning("[SimpleSpleef] Could not parse teamBlockMaterialRed in arena " + getId());
-				return; // ignore exceptions
-			}
-			ItemStack blueBlockMaterial;
-			try {
-				blueBlockMaterial = MaterialHelper.getItemStackFromString(configuration.getString("teamBlockMaterialBlue", null), true);
-			} catch (Exception e) {
-				SimpleSpleef.log.warning("[SimpleSpleef] Could not parse teamBlockMaterialBlue in arena " + getId());
-				return; // ignore exceptions
-			}
-
-			// blocks are ok, now check touched material and join team
-			if (redBlockMaterial != null && redBlockMaterial.getTypeId() == block.getTypeId() && MaterialHelper.isSameBlockType(block, redBlockMaterial)) {
+			// check touched material and join team
+			if (redBlocks != null && redBlocks.matches(block)) {
 				if (team(event.getPlayer(), "red")) return;
 			}
-			if (blueBlockMaterial != null && blueBlockMaterial.getTypeId() == block.getTypeId() && MaterialHelper.isSameBlockType(block, blueBlockMaterial)) {
+			if (blueBlocks != null && blueBlocks.matches(block)) {
 				if (team(event.getPlayer(), "blue")) return;
 			}
 		}
@@ -4,45 +4,90 @@
 package de.beimax.simplespleef.game;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
 import org.bukkit.entity.Player;
-import org.bukkit.inventory.ItemStack;
 
 import de.beimax.simplespleef.SimpleSpleef;
 import de.beimax.simplespleef.game.floortracking.FloorTracker;
+import de.beimax.simplespleef.util.BlockMatcher;
 import de.beimax.simplespleef.util.MaterialHelper;
 
 /**
  * @author mkalus
  * Keeps tracks of blocks players are standing on etc.
+ * Deadlines of blocks are kept in a hashed timing wheel of server ticks, so each tick only looks at the blocks
+ * due in this tick (and those due a multiple of the wheel size later).
  */
 public class PlayerOnBlockDegenerator implements Runnable {
 	/**
-	 * seconds to wait for degeneration
+	 * number of slots of the timing wheel - power of two
 	 */
-	private int seconds;
+	private static final int WHEEL_SIZE = 256;
+
+	/**
+	 * ticks to wait for degeneration
+	 */
+	private int ticks;
+
+	/**
+	 * maximum number of blocks pending per player
+	 */
+	private int blocksPerPlayer;
 	
 	/**
-	 * list of blocks that will degenerate when standing on them for too long
+	 * blocks that will degenerate when standing on them for too long (empty: all blocks)
 	 */
-	private List<ItemStack> degeneratingBlocks;
+	private BlockMatcher degeneratingBlocks;
 	
 	/**
-	 * list of DegenerationKeeper to players
+	 * list of pending blocks of players - last block walked on at the end
 	 */
-	private Map<Player, DegenerationKeeper> degenerationList;
+	private Map<Player, LinkedList<Deadline>> degenerationList;
+
+	/**
+	 * timing wheel: linked lists of deadlines, slot is tick modulo wheel size
+	 */
+	private final Deadline[] wheel = new Deadline[WHEEL_SIZE];
+
+	/**
+	 * current tick
+	 */
+	private long currentTick = 0;
 	
 	/**
 	 * reference to floor tracker
 	 */
 	private FloorTracker floorTracker;
-	
+
+	/**
+	 * game of degenerator
+	 */
+	private Game game;
+
+	/**
+	 * degenerator has been stopped - no more blocks are changed
+	 */
+	private boolean stopped = false;
+
+	/**
+	 * notifies the floor tracker of written block changes
+	 */
+	private final BlockMutationQueue.MutationListener floorTrackerNotifier = new BlockMutationQueue.MutationListener() {
+		@Override
+		public void blockChanged(Block block, int oldType, byte oldData) {
+			if (floorTracker != null)
+				floorTracker.updateBlock(block, oldType, oldData);
+		}
+	};
+
 	/**
 	 * id of the scheduler
 	 */
@@ -51,19 +96,21 @@ public class PlayerOnBlockDegenerator implements Runnable {
 	/**
 	 * Constructor
 	 * @param numberOfSecondsToDegenerate
+	 * @param blocksPerPlayer maximum number of blocks pending per player (last blocks walked on)
+	 * @param degeneratingBlocks
+	 * @param game
+	 * @param floorTracker
 	 */
-	public PlayerOnBlockDegenerator(int numberOfSecondsToDegenerate, List<String> degeneratingBlocks, FloorTracker floorTracker) {
-		seconds = numberOfSecondsToDegenerate;
+	public PlayerOnBlockDegenerator(int numberOfSecondsToDegenerate, int blocksPerPlayer, List<String> degeneratingBlocks, Game game, FloorTracker floorTracker) {
+		ticks = numberOfSecondsToDegenerate * 20;
+		this.blocksPerPlayer = blocksPerPlayer < 1 ? 1 : blocksPerPlayer;
 		
 		// fill with degenerating blocks
-		this.degeneratingBlocks = new LinkedList<ItemStack>();
-		for (String string : degeneratingBlocks) {
-			ItemStack stack = MaterialHelper.getItemStackFromString(string, true);
-			if (stack != null) this.degeneratingBlocks.add(stack);
-		}
+		this.degeneratingBlocks = MaterialHelper.compileMatcher(degeneratingBlocks);
 		
-		degenerationList = new HashMap<Player, PlayerOnBlockDegenerator.DegenerationKeeper>();
+		degenerationList = new HashMap<Player, LinkedList<Deadline>>();
 		
+		this.game = game;
 		this.floorTracker = floorTracker;
 	}
 	
@@ -71,7 +118,7 @@ public class PlayerOnBlockDegenerator implements Runnable {
 	 * start the degenerator task
 	 */
 	public void startBlockDegenerator() {
-		schedulerId = SimpleSpleef.getPlugin().getServer().getScheduler().scheduleAsyncRepeatingTask(SimpleSpleef.getPlugin(), this, 0L, 4L);
+		schedulerId = SimpleSpleef.getPlugin().getServer().getScheduler().scheduleAsyncRepeatingTask(SimpleSpleef.getPlugin(), this, 0L, 1L);
 	}
 
 	/**
@@ -80,94 +127,158 @@ public class PlayerOnBlockDegenerator implements Runnable {
 	 */
 	public void updatePlayer(Player player) {
 		// get block player is standing on
-		Block block = player.getLocation().getBlock().getRelative(BlockFace.DOWN);
+		updatePlayer(player, player.getLocation().getBlock().getRelative(BlockFace.DOWN));
+	}
+
+	/**
+	 * update block player is standing on
+	 * @param player
+	 * @param block
+	 */
+	protected synchronized void updatePlayer(Player player, Block block) {
+		if (block == null || block.getType() == Material.AIR) return; //no NPEs, ignore air...
 		
-		// get keeper
-		DegenerationKeeper keeper = degenerationList.get(player);
+		// get pending blocks of player
+		LinkedList<Deadline> pending = degenerationList.get(player);
 		
 		// add player if needed
-		if (keeper == null) {
-			keeper = new DegenerationKeeper();
-			keeper.updateBlock(block);
-			degenerationList.put(player, keeper);
-		} else // just update the block
-			keeper.updateBlock(block);
+		if (pending == null) {
+			pending = new LinkedList<Deadline>();
+			degenerationList.put(player, pending);
+		} else if (!pending.isEmpty()) {
+			// still on the same block?
+			Deadline last = pending.getLast();
+			if (last.world == block.getWorld() && block.getX() == last.x && block.getY() == last.y && block.getZ() == last.z) return;
+			// was it one of the earlier ones? Then it keeps its deadline
+			for (Deadline deadline : pending)
+				if (deadline.world == block.getWorld() && block.getX() == deadline.x && block.getY() == deadline.y && block.getZ() == deadline.z) return;
+		}
+
+		// only if in list of blocks
+		if (degeneratingBlocks.isEmpty() || degeneratingBlocks.matches(block)) {
+			Deadline deadline = new Deadline(block.getWorld(), block.getX(), block.getY(), block.getZ(), currentTick + (ticks > 0 ? ticks : 1), pending);
+			pending.add(deadline);
+			schedule(deadline);
+			// too many blocks pending? Drop the oldest
+			if (pending.size() > blocksPerPlayer)
+				pending.removeFirst().cancelled = true;
+		}
 	}
 	
-	public void removePlayer(Player player) {
-		// get keeper
-		DegenerationKeeper keeper = degenerationList.get(player);
+	public synchronized void removePlayer(Player player) {
+		// get pending blocks
+		LinkedList<Deadline> pending = degenerationList.remove(player);
 		
-		// if keeper found for player
-		if (keeper != null) {
-			degenerationList.remove(player); //remove from list
+		// if found for player, cancel them
+		if (pending != null) {
+			for (Deadline deadline : pending)
+				deadline.cancelled = true;
 		}
 	}
 
 	/**
-	 * stop the block degenerator
+	 * stop the block degenerator - no blocks are queued for change after this has returned
 	 */
-	public void stopBlockDegenerator() {
+	public synchronized void stopBlockDegenerator() {
+		stopped = true;
 		SimpleSpleef.getPlugin().getServer().getScheduler().cancelTask(schedulerId);
 	}
 	
 	@Override
-	public void run() {
-		// cycle through keepers and update them
-		for (DegenerationKeeper keeper : degenerationList.values()) {
-			keeper.tick();
+	public synchronized void run() {
+		if (stopped) return; // task might have been started already
+		currentTick++;
+		// walk through slot of current tick
+		int slot = (int) (currentTick & (WHEEL_SIZE - 1));
+		Deadline previous = null;
+		Deadline deadline = wheel[slot];
+		while (deadline != null) {
+			Deadline next = deadline.next;
+			if (deadline.cancelled || deadline.tick <= currentTick) {
+				// remove from wheel
+				if (previous == null) wheel[slot] = next;
+				else previous.next = next;
+				if (!deadline.cancelled) degenerate(deadline);
+			} else previous = deadline; // due in a later round
+			deadline = next;
 		}
 	}
+
+	/**
+	 * add deadline to wheel
+	 * @param deadline
+	 */
+	private void schedule(Deadline deadline) {
+		int slot = (int) (deadline.tick & (WHEEL_SIZE - 1));
+		deadline.next = wheel[slot];
+		wheel[slot] = deadline;
+	}
+
+	/**
+	 * block dissolves into thin air - written in the main thread, floor tracker is notified afterwards
+	 * @param deadline
+	 */
+	private void degenerate(Deadline deadline) {
+		degenerateBlock(deadline.world, deadline.x, deadline.y, deadline.z);
+		// not pending any more
+		Iterator<Deadline> it = deadline.pending.iterator();
+		while (it.hasNext())
+			if (it.next() == deadline) {
+				it.remove();
+				break;
+			}
+	}
 	
 	/**
-	 * Keeps track of player's block and its degeneration
+	 * queue the change of a block into air
+	 * @param world
+	 * @param x
+	 * @param y
+	 * @param z
+	 */
+	protected void degenerateBlock(World world, int x, int y, int z) {
+		SimpleSpleef.getBlockMutationQueue().enqueue(game, world, x, y, z, Material.AIR.getId(), (byte) 0,
+				floorTracker == null ? null : floorTrackerNotifier);
+	}
+
+	/**
+	 * Pending degeneration of a block
 	 * @author mkalus
 	 *
 	 */
-	private class DegenerationKeeper {
+	private static class Deadline {
+		private final World world;
+		private final int x;
+		private final int y;
+		private final int z;
+
 		/**
-		 * keeps track of the checked block
+		 * tick at which the block will dissolve
 		 */
-		private Block checkedBlock = null;
-		
+		private final long tick;
+
 		/**
-		 * timestamp at which the block will dissolve
+		 * pending blocks of the player
 		 */
-		private long timestamp;
-		
-		public void tick() {
-			// has timestamp been exceeded?
-			if (checkedBlock != null && System.currentTimeMillis() >= timestamp) {
-				// get original data
-				int oldType = checkedBlock.getTypeId();
-				byte oldData = checkedBlock.getData();
-				checkedBlock.setType(Material.AIR); // block dissolves into thin air
-				checkedBlock.setData((byte) 0);
-				timestamp = Long.MAX_VALUE; // to not have this happen again
-
-				// notify floor tracker
-				if (floorTracker != null)
-					floorTracker.updateBlock(checkedBlock, oldType, oldData);
-
-				// clean up
-				checkedBlock = null;
-			}
-		}
-		
+		private final LinkedList<Deadline> pending;
+
 		/**
-		 * called by updatePlayer to update a block
-		 * @param block
+		 * player moved on or left
 		 */
-		public void updateBlock(Block block) {
-			if (block == null) return; //no NPEs
-			if (block.getType() != Material.AIR &&
-					(checkedBlock == null || block.getX() != checkedBlock.getX() || block.getY() != checkedBlock.getY() || block.getZ() != checkedBlock.getZ())) { // ignore air...
-				// only if in list of blocks
-				if (degeneratingBlocks == null || degeneratingBlocks.size() == 0 || MaterialHelper.isSameBlockType(block, degeneratingBlocks)) {
-					timestamp = System.currentTimeMillis() + ((long) seconds * 1000); // update timestamp
-					checkedBlock = block; // update block
-				}
-			}
+		private boolean cancelled = false;
+
+		/**
+		 * next deadline in the same slot of the wheel
+		 */
+		private Deadline next = null;
+
+		public Deadline(World world, int x, int y, int z, long tick, LinkedList<Deadline> pending) {
+			this.world = world;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+			this.tick = tick;
+			this.pending = pending;
 		}
 	}
 }
@@ -0,0 +1,214 @@
+/**
+ * 
+ */
+package de.beimax.simplespleef.game.arenarestoring;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bukkit.World;
+
+import de.beimax.simplespleef.SimpleSpleef;
+import de.beimax.simplespleef.util.CuboidImpl;
+
+/**
+ * @author mkalus
+ * Restores arenas left over from a server crash: snapshots (arena_<id>.save) and journals (journal_<id>.log) found in
+ * the data folder at startup are applied within a time budget per tick. Arenas cannot be joined until they have been recovered.
+ */
+public class ArenaRecovery implements Runnable {
+	/**
+	 * file names of snapshots and journals
+	 */
+	private static final Pattern FILE_PATTERN = Pattern.compile("^(?:arena_(.+)\\.save|journal_(.+)\\.log)$");
+
+	/**
+	 * files left to recover
+	 */
+	private final LinkedList<File> files = new LinkedList<File>();
+
+	/**
+	 * arenas being recovered
+	 */
+	private final Set<String> arenas = new HashSet<String>();
+
+	/**
+	 * milliseconds per tick spent recovering
+	 */
+	private final int tickBudget;
+
+	/**
+	 * file being recovered at the moment
+	 */
+	private File current = null;
+	private ArenaSnapshotReader reader = null;
+	private CuboidImpl cuboid = null;
+	private BlockJournal.RestoreIterator iterator = null;
+
+	/**
+	 * id of task
+	 */
+	private int schedulerId = -1;
+
+	/**
+	 * Constructor
+	 * @param tickBudget milliseconds per tick spent recovering
+	 */
+	public ArenaRecovery(int tickBudget) {
+		this.tickBudget = tickBudget > 0 ? tickBudget : 20;
+	}
+
+	/**
+	 * look for left over files and start recovering them
+	 */
+	public void start() {
+		File[] candidates = SimpleSpleef.getPlugin().getDataFolder().listFiles();
+		if (candidates == null) return; // no data folder yet
+		// sort by name, so snapshots (arena_) are restored before journals (journal_) that might overlay them
+		Arrays.sort(candidates);
+
+		for (File file : candidates) {
+			Matcher matcher = FILE_PATTERN.matcher(file.getName());
+			if (!matcher.matches()) continue;
+			files.add(file);
+			arenas.add(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+		}
+		if (files.isEmpty()) return;
+
+		SimpleSpleef.log.info("[SimpleSpleef] Recovering " + files.size() + " arena file(s) left over after unclean shutdown.");
+		// run in main thread, because it changes the world - first tick is after the server has started
+		schedulerId = SimpleSpleef.getPlugin().getServer().getScheduler().scheduleSyncRepeatingTask(SimpleSpleef.getPlugin(), this, 0L, 1L);
+	}
+
+	/**
+	 * @param arena id of arena
+	 * @return true, if the arena is still being recovered
+	 */
+	public synchronized boolean isRecovering(String arena) {
+		return arenas.contains(arena);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		long budgetNanos = tickBudget * 1000000L;
+		long start = System.nanoTime();
+
+		while (System.nanoTime() - start < budgetNanos) {
+			// open next file
+			if (current == null) {
+				if (files.isEmpty()) { // finished
+					SimpleSpleef.getPlugin().getServer().getScheduler().cancelTask(schedulerId);
+					SimpleSpleef.log.info("[SimpleSpleef] Finished recovering arenas.");
+					return;
+				}
+				current = files.removeFirst();
+				if (!open(current)) {
+					finishFile(false);
+					continue;
+				}
+			}
+
+			// restore within the remaining budget
+			boolean finished;
+			if (reader != null)
+				finished = reader.restore(cuboid, budgetNanos - (System.nanoTime() - start));
+			else {
+				int blocks = 0;
+				while (iterator.hasNext() && ((++blocks & 63) != 0 || System.nanoTime() - start < budgetNanos))
+					iterator.restoreNext();
+				finished = !iterator.hasNext();
+			}
+			if (finished) finishFile(true);
+		}
+	}
+
+	/**
+	 * open file to recover
+	 * @param file
+	 * @return true, if the file could be opened
+	 */
+	private boolean open(File file) {
+		try {
+			if (file.getName().endsWith(".save")) {
+				// map snapshot into memory
+				RandomAccessFile raFile = new RandomAccessFile(file, "r");
+				MappedByteBuffer buffer;
+				try {
+					FileChannel channel = raFile.getChannel();
+					buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				} finally {
+					raFile.close();
+				}
+				reader = new ArenaSnapshotReader(buffer);
+				World world = SimpleSpleef.getPlugin().getServer().getWorld(reader.getWorldName());
+				if (world == null) {
+					SimpleSpleef.log.warning("[SimpleSpleef] Could not recover " + file.getName() + ": world " + reader.getWorldName() + " does not exist.");
+					reader = null;
+					return false;
+				}
+				int[] coords = reader.getCoords();
+				cuboid = new CuboidImpl(world, coords[0], coords[1], coords[2], coords[3], coords[4], coords[5]);
+			} else {
+				BlockJournal journal = JournalFile.read(file);
+				if (journal == null) {
+					SimpleSpleef.log.warning("[SimpleSpleef] Could not recover " + file.getName() + ": world does not exist.");
+					return false;
+				}
+				iterator = journal.restoreIterator();
+			}
+			return true;
+		} catch (Exception e) {
+			SimpleSpleef.log.warning("[SimpleSpleef] Could not recover " + file.getName() + ". Reason: " + e.getMessage());
+			// keep broken file for inspection, but do not try again
+			if (!file.renameTo(new File(file.getParentFile(), file.getName() + ".broken")))
+				SimpleSpleef.log.warning("[SimpleSpleef] Could not rename file " + file.getName());
+			reader = null;
+			return false;
+		}
+	}
+
+	/**
+	 * finish current file
+	 * @param restored true, if the file has been restored
+	 */
+	private void finishFile(boolean restored) {
+		reader = null; // release mapping before deleting the file
+		cuboid = null;
+		iterator = null;
+		if (restored) {
+			SimpleSpleef.log.info("[SimpleSpleef] Recovered " + current.getName() + ".");
+			if (!current.delete()) {
+				current.deleteOnExit();
+				SimpleSpleef.log.warning("[SimpleSpleef] Could not delete file " + current.getName());
+			}
+		}
+
+		// arena can be joined again, if there are no more files for it
+		Matcher matcher = FILE_PATTERN.matcher(current.getName());
+		if (matcher.matches()) {
+			String arena = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+			boolean more = false;
+			for (File file : files) {
+				Matcher other = FILE_PATTERN.matcher(file.getName());
+				if (other.matches() && arena.equals(other.group(1) != null ? other.group(1) : other.group(2))) more = true;
+			}
+			if (!more) {
+				synchronized (this) {
+					arenas.remove(arena);
+				}
+			}
+		}
+		current = null;
+	}
+}
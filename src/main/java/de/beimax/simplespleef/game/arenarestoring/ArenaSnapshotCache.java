@@ -0,0 +1,183 @@
+/**
+ * 
+ */
+package de.beimax.simplespleef.game.arenarestoring;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import de.beimax.simplespleef.util.Cuboid;
+
+/**
+ * @author mkalus
+ * Keeps the last snapshot of each arena in memory (compressed), so arenas do not have to be captured again in the next round.
+ * Least recently used snapshots are evicted when the cache exceeds settings.arenaSnapshotCacheSize (in KB).
+ * Snapshots are only valid for the exact definition of the arena cuboid (world, bounds and shape).
+ */
+public abstract class ArenaSnapshotCache {
+	/**
+	 * cached snapshots by arena id - in access order
+	 */
+	private static final LinkedHashMap<String, CachedSnapshot> cache = new LinkedHashMap<String, CachedSnapshot>(16, 0.75f, true);
+
+	/**
+	 * total size of the compressed snapshots in the cache
+	 */
+	private static long size = 0;
+
+	/**
+	 * get cached snapshot
+	 * @param arena id of arena
+	 * @param cuboid current cuboid of the arena
+	 * @return cached snapshot or null, if there is none for this definition of the cuboid
+	 */
+	public static synchronized CachedSnapshot get(String arena, Cuboid cuboid) {
+		CachedSnapshot snapshot = cache.get(arena);
+		if (snapshot == null) return null;
+		if (!snapshot.definition.equals(cuboid.getDefinition())) { // arena has changed
+			invalidate(arena);
+			return null;
+		}
+		return snapshot;
+	}
+
+	/**
+	 * compress snapshot and put it into the cache - may be called asynchronously
+	 * @param arena id of arena
+	 * @param definition definition of the cuboid of the arena (see Cuboid.getDefinition())
+	 * @param snapshot snapshot as written by ArenaSnapshotWriter
+	 * @param maxSize maximum size of the cache in bytes (settings.arenaSnapshotCacheSize, read in the main thread)
+	 * @param direct keep snapshot in direct buffer (settings.arenaSnapshotCacheDirect, read in the main thread)
+	 */
+	public static void put(String arena, String definition, byte[] snapshot, long maxSize, boolean direct) {
+		if (maxSize <= 0) return; // cache disabled
+
+		// compress snapshot outside of lock
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		deflater.setInput(snapshot);
+		deflater.finish();
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(snapshot.length / 4 + 64);
+		byte[] buffer = new byte[8192];
+		while (!deflater.finished()) {
+			int length = deflater.deflate(buffer);
+			compressed.write(buffer, 0, length);
+		}
+		deflater.end();
+		if (compressed.size() > maxSize) return; // too large to be cached at all
+
+		// keep in direct buffer, if configured, so large arenas do not fill the heap
+		ByteBuffer data;
+		if (direct) {
+			data = ByteBuffer.allocateDirect(compressed.size());
+			data.put(compressed.toByteArray());
+			data.flip();
+		} else data = ByteBuffer.wrap(compressed.toByteArray());
+
+		synchronized (ArenaSnapshotCache.class) {
+			invalidate(arena);
+			cache.put(arena, new CachedSnapshot(definition, data, snapshot.length));
+			size += data.capacity();
+
+			// evict least recently used snapshots
+			Iterator<Map.Entry<String, CachedSnapshot>> it = cache.entrySet().iterator();
+			while (size > maxSize && it.hasNext()) {
+				size -= it.next().getValue().data.capacity();
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * remove snapshot of an arena from the cache
+	 * @param arena id of arena
+	 */
+	public static synchronized void invalidate(String arena) {
+		CachedSnapshot snapshot = cache.remove(arena);
+		if (snapshot != null) size -= snapshot.data.capacity();
+	}
+
+	/**
+	 * remove all snapshots from the cache
+	 */
+	public static synchronized void clear() {
+		cache.clear();
+		size = 0;
+	}
+
+	/**
+	 * cached compressed snapshot - immutable, so it can be read asynchronously
+	 * @author mkalus
+	 *
+	 */
+	public static class CachedSnapshot {
+		/**
+		 * definition of the cuboid
+		 */
+		private final String definition;
+
+		/**
+		 * compressed snapshot
+		 */
+		private final ByteBuffer data;
+
+		/**
+		 * length of uncompressed snapshot
+		 */
+		private final int length;
+
+		/**
+		 * Constructor
+		 * @param definition
+		 * @param data
+		 * @param length
+		 */
+		private CachedSnapshot(String definition, ByteBuffer data, int length) {
+			this.definition = definition;
+			this.data = data;
+			this.length = length;
+		}
+
+		/**
+		 * @return length of the uncompressed snapshot
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		/**
+		 * decompress snapshot to an output stream - stream is not closed
+		 * @param out
+		 * @throws IOException
+		 */
+		public void writeTo(OutputStream out) throws IOException {
+			ByteBuffer in = data.duplicate(); // keep position of shared buffer
+			Inflater inflater = new Inflater();
+			byte[] input = new byte[8192];
+			byte[] output = new byte[8192];
+			try {
+				while (!inflater.finished()) {
+					if (inflater.needsInput()) {
+						if (!in.hasRemaining()) throw new IOException("Cached snapshot is truncated.");
+						int read = Math.min(input.length, in.remaining());
+						in.get(input, 0, read);
+						inflater.setInput(input, 0, read);
+					}
+					int inflated = inflater.inflate(output);
+					out.write(output, 0, inflated);
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("Cached snapshot is corrupt: " + e.getMessage());
+			} finally {
+				inflater.end();
+			}
+		}
+	}
+}
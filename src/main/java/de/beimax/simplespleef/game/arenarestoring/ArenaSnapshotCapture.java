@@ -0,0 +1,130 @@
+/**
+ * 
+ */
+package de.beimax.simplespleef.game.arenarestoring;
+
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+
+import de.beimax.simplespleef.util.Cuboid;
+import de.beimax.simplespleef.util.PackedBlock;
+
+/**
+ * @author mkalus
+ * Captures the chunks of a cuboid as chunk snapshots. Capturing has to be done in the main thread, but the
+ * captured blocks can be read from any thread afterwards, so encoding and writing the arena can be done
+ * asynchronously.
+ */
+public class ArenaSnapshotCapture {
+	/**
+	 * name of captured world
+	 */
+	private final String worldName;
+
+	/**
+	 * bounds of capture: int[]{minX, minY, minZ, maxX, maxY, maxZ}
+	 */
+	private final int[] coords;
+
+	/**
+	 * chunk coordinates of the first chunk
+	 */
+	private final int chunkX;
+	private final int chunkZ;
+
+	/**
+	 * captured chunks [x][z]
+	 */
+	private final ChunkSnapshot[][] chunks;
+
+	/**
+	 * region captured, if it does not fill its bounding box (null for cuboids)
+	 */
+	private final Cuboid region;
+
+	/**
+	 * membership mask of non-cuboid regions, null for cuboids - created on first request
+	 */
+	private RegionMask mask;
+
+	/**
+	 * mask has been created
+	 */
+	private boolean maskCreated;
+
+	/**
+	 * capture the chunks of a cuboid - has to be called in the main thread
+	 * @param cuboid
+	 * @return capture
+	 */
+	public static ArenaSnapshotCapture capture(Cuboid cuboid) {
+		int[] coords = cuboid.getCoords();
+		World world = cuboid.getWorld();
+		int chunkX = coords[0] >> 4;
+		int chunkZ = coords[2] >> 4;
+
+		ChunkSnapshot[][] chunks = new ChunkSnapshot[(coords[3] >> 4) - chunkX + 1][(coords[5] >> 4) - chunkZ + 1];
+		for (int x = 0; x < chunks.length; x++)
+			for (int z = 0; z < chunks[x].length; z++)
+				chunks[x][z] = world.getChunkAt(chunkX + x, chunkZ + z).getChunkSnapshot(); // loads chunk, if needed
+
+		// the mask of non-cuboid regions is created later, when the capture is encoded
+		return new ArenaSnapshotCapture(world.getName(), coords, chunkX, chunkZ, chunks, cuboid.isRectangular() ? null : cuboid);
+	}
+
+	/**
+	 * Constructor
+	 * @param worldName
+	 * @param coords
+	 * @param chunkX
+	 * @param chunkZ
+	 * @param chunks
+	 * @param region
+	 */
+	private ArenaSnapshotCapture(String worldName, int[] coords, int chunkX, int chunkZ, ChunkSnapshot[][] chunks, Cuboid region) {
+		this.worldName = worldName;
+		this.coords = coords;
+		this.chunkX = chunkX;
+		this.chunkZ = chunkZ;
+		this.chunks = chunks;
+		this.region = region;
+	}
+
+	/**
+	 * create mask on first call - may be called asynchronously
+	 * @return membership mask of the region or null, if the region is a cuboid
+	 */
+	public synchronized RegionMask getMask() {
+		if (!maskCreated) {
+			if (region != null) mask = RegionMask.create(region);
+			maskCreated = true;
+		}
+		return mask;
+	}
+
+	/**
+	 * @return name of the captured world
+	 */
+	public String getWorldName() {
+		return worldName;
+	}
+
+	/**
+	 * @return bounds of the capture: int[]{minX, minY, minZ, maxX, maxY, maxZ}
+	 */
+	public int[] getCoords() {
+		return coords.clone();
+	}
+
+	/**
+	 * get captured block
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return packed type/data value
+	 */
+	public int getBlock(int x, int y, int z) {
+		ChunkSnapshot chunk = chunks[(x >> 4) - chunkX][(z >> 4) - chunkZ];
+		return PackedBlock.pack(chunk.getBlockTypeId(x & 15, y, z & 15), (byte) chunk.getBlockData(x & 15, y, z & 15));
+	}
+}
@@ -0,0 +1,276 @@
+/**
+ * 
+ */
+package de.beimax.simplespleef.game.arenarestoring;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import de.beimax.simplespleef.util.Cuboid;
+import de.beimax.simplespleef.util.PackedBlock;
+
+/**
+ * @author mkalus
+ * Reads arena snapshots written by ArenaSnapshotWriter and decodes them straight into the world.
+ * The buffer is only read sequentially, so it may be a memory mapped file - only the header is kept on the heap.
+ */
+public class ArenaSnapshotReader {
+	/**
+	 * buffer containing the snapshot
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * name of the world the snapshot was taken in
+	 */
+	private final String worldName;
+
+	/**
+	 * bounds of snapshot: int[]{minX, minY, minZ, maxX, maxY, maxZ}
+	 */
+	private final int[] coords;
+
+	/**
+	 * membership mask of non-cuboid regions, null for cuboids
+	 */
+	private final RegionMask mask;
+
+	/**
+	 * palette of packed block values
+	 */
+	private final int[] palette;
+
+	/**
+	 * slice offsets relative to the body start
+	 */
+	private final int[] sliceOffsets;
+
+	/**
+	 * start of the body within the buffer
+	 */
+	private final int bodyStart;
+
+	/**
+	 * cursor of the restoring process, so restoring can be done in several steps
+	 */
+	private int cursorSlice = 0;
+	private int cursorY;
+	private int cursorZ;
+	private int cursorPosition;
+	private int cursorRemaining = 0;
+	private int cursorValue;
+
+	/**
+	 * number of blocks written and skipped (unchanged) so far
+	 */
+	private int written = 0;
+	private int skipped = 0;
+
+	/**
+	 * Constructor - reads header and checks checksum
+	 * @param buffer
+	 * @throws IOException if the snapshot is invalid
+	 */
+	public ArenaSnapshotReader(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+
+		int length = buffer.limit();
+		if (length < 9) throw new IOException("Snapshot is too short.");
+
+		// check checksum first
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[8192];
+		ByteBuffer checked = buffer.duplicate();
+		checked.position(0);
+		checked.limit(length - 4);
+		while (checked.hasRemaining()) {
+			int read = Math.min(chunk.length, checked.remaining());
+			checked.get(chunk, 0, read);
+			crc.update(chunk, 0, read);
+		}
+		if ((int) crc.getValue() != buffer.getInt(length - 4))
+			throw new IOException("Snapshot checksum mismatch.");
+
+		// read header
+		buffer.position(0);
+		if (buffer.getInt() != ArenaSnapshotWriter.MAGIC) throw new IOException("Not an arena snapshot.");
+		byte version = buffer.get();
+		if (version != ArenaSnapshotWriter.VERSION) throw new IOException("Unknown snapshot version " + version + ".");
+		byte[] name = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(name);
+		worldName = new String(name, "UTF-8");
+		coords = new int[6];
+		for (int i = 0; i < 6; i++)
+			coords[i] = buffer.getInt();
+		byte flags = buffer.get();
+		if ((flags & ArenaSnapshotWriter.FLAG_MASK) != 0) {
+			long[] words = new long[buffer.getInt()];
+			for (int i = 0; i < words.length; i++)
+				words[i] = buffer.getLong();
+			mask = new RegionMask(words);
+		} else mask = null;
+		palette = new int[buffer.getInt()];
+		for (int i = 0; i < palette.length; i++)
+			palette[i] = buffer.getInt();
+		sliceOffsets = new int[coords[3] - coords[0] + 1];
+		for (int i = 0; i < sliceOffsets.length; i++)
+			sliceOffsets[i] = buffer.getInt();
+		int bodyLength = buffer.getInt();
+		bodyStart = buffer.position();
+		if (bodyStart + bodyLength != length - 4) throw new IOException("Snapshot body length mismatch.");
+
+		// initialize cursor
+		cursorY = coords[1];
+		cursorZ = coords[2];
+	}
+
+	/**
+	 * @return name of the world the snapshot was taken in
+	 */
+	public String getWorldName() {
+		return worldName;
+	}
+
+	/**
+	 * @return bounds of the snapshot: int[]{minX, minY, minZ, maxX, maxY, maxZ}
+	 */
+	public int[] getCoords() {
+		return coords.clone();
+	}
+
+	/**
+	 * @return number of slices (one per x coordinate) in the snapshot
+	 */
+	public int getSliceCount() {
+		return sliceOffsets.length;
+	}
+
+	/**
+	 * @return progress of restoring between 0 and 1
+	 */
+	public double getProgress() {
+		return (double) cursorSlice / sliceOffsets.length;
+	}
+
+	/**
+	 * @return number of blocks that differed from the snapshot and have been written
+	 */
+	public int getWritten() {
+		return written;
+	}
+
+	/**
+	 * @return number of blocks that were unchanged and have been skipped
+	 */
+	public int getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * @return true, if all blocks have been restored
+	 */
+	public boolean isFinished() {
+		return cursorSlice >= sliceOffsets.length;
+	}
+
+	/**
+	 * restore the whole snapshot into the world of the cuboid - only changed blocks contained in the cuboid are written
+	 * @param cuboid
+	 */
+	public void restore(Cuboid cuboid) {
+		restore(cuboid, Long.MAX_VALUE);
+	}
+
+	/**
+	 * restore the snapshot into the world of the cuboid until a time budget has been used up - only blocks
+	 * contained in the cuboid are written. Subsequent calls continue where the last call stopped.
+	 * @param cuboid
+	 * @param budgetNanos time budget in nanoseconds
+	 * @return true, if the snapshot has been restored completely
+	 */
+	public boolean restore(Cuboid cuboid, long budgetNanos) {
+		World world = cuboid.getWorld();
+		int sizeY = coords[4] - coords[1] + 1;
+		int sizeZ = coords[5] - coords[2] + 1;
+		long start = System.nanoTime();
+		int blocks = 0;
+
+		while (cursorSlice < sliceOffsets.length) {
+			int x = coords[0] + cursorSlice;
+			if (cursorY == coords[1] && cursorZ == coords[2]) // start of slice: jump to slice data
+				cursorPosition = bodyStart + sliceOffsets[cursorSlice];
+			buffer.position(cursorPosition);
+			while (cursorY <= coords[4]) {
+				if (mask != null) { // skip positions outside of the region
+					int index = ((cursorSlice * sizeY) + cursorY - coords[1]) * sizeZ + cursorZ - coords[2];
+					if (!mask.get(index)) {
+						int next = mask.nextSetBit(index);
+						if (next < 0 || next >= (cursorSlice + 1) * sizeY * sizeZ) break; // nothing left in slice
+						next -= cursorSlice * sizeY * sizeZ;
+						cursorY = coords[1] + next / sizeZ;
+						cursorZ = coords[2] + next % sizeZ;
+					}
+				}
+				if (cursorRemaining == 0) { // read next run
+					cursorRemaining = readVarInt(buffer);
+					cursorValue = palette[readVarInt(buffer)];
+				}
+				cursorRemaining--;
+				if (mask != null || cuboid.contains(x, cursorY, cursorZ)) { // only restore, if within the cuboid (mask has been checked already)
+					Block block = world.getBlockAt(x, cursorY, cursorZ);
+					int typeId = PackedBlock.getTypeId(cursorValue);
+					byte data = PackedBlock.getData(cursorValue);
+					// only write blocks that have changed - usually just the floor
+					if (block.getTypeId() != typeId || block.getData() != data) {
+						block.setTypeIdAndData(typeId, data, false); // single update with the right data
+						written++;
+					} else skipped++;
+				}
+				// advance cursor
+				if (++cursorZ > coords[5]) {
+					cursorZ = coords[2];
+					cursorY++;
+				}
+				// check the clock every few blocks only
+				if ((++blocks & 63) == 0 && System.nanoTime() - start >= budgetNanos) {
+					if (cursorY > coords[4]) nextSlice();
+					else cursorPosition = buffer.position();
+					return isFinished();
+				}
+			}
+			nextSlice();
+		}
+		return true;
+	}
+
+	/**
+	 * move cursor to the start of the next slice
+	 */
+	private void nextSlice() {
+		cursorSlice++;
+		cursorY = coords[1];
+		cursorZ = coords[2];
+		cursorRemaining = 0;
+	}
+
+	/**
+	 * read unsigned variable length integer (7 bits per byte)
+	 * @param buffer
+	 * @return
+	 */
+	protected static int readVarInt(ByteBuffer buffer) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+}
@@ -0,0 +1,269 @@
+/**
+ * 
+ */
+package de.beimax.simplespleef.game.arenarestoring;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import de.beimax.simplespleef.util.Cuboid;
+
+/**
+ * @author mkalus
+ * Writes arena snapshots in a compact binary format (read by ArenaSnapshotReader):
+ *
+ * int MAGIC, byte VERSION, short length + UTF-8 world name, int[6] bounds (minX, minY, minZ, maxX, maxY, maxZ),
+ * byte flags, [int word count, long[] region mask - if FLAG_MASK is set],
+ * int palette size, int[] palette (packed type/data values), int[sizeX] slice offsets,
+ * int body length, body, int crc32 of everything before.
+ *
+ * The body contains one slice per x coordinate (y, then z within the slice), each slice being a list of
+ * runs (varint length, varint palette index). Runs never cross slice boundaries, so slices can be read independently.
+ * If the snapshot has a region mask, blocks outside the region are left out of the body.
+ */
+public abstract class ArenaSnapshotWriter {
+	/**
+	 * magic number at the start of each snapshot ("SSNP")
+	 */
+	public static final int MAGIC = 0x53534E50;
+
+	/**
+	 * current version of the format
+	 */
+	public static final byte VERSION = 3;
+
+	/**
+	 * flag: snapshot contains a region mask
+	 */
+	public static final byte FLAG_MASK = 1;
+
+	/**
+	 * write snapshot of a cuboid to an output stream - stream is not closed; has to be called in the main thread
+	 * @param cuboid
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void write(Cuboid cuboid, OutputStream out) throws IOException {
+		write(ArenaSnapshotCapture.capture(cuboid), out);
+	}
+
+	/**
+	 * arenas smaller than this are encoded in the calling thread only
+	 */
+	private static final int PARALLEL_MIN_VOLUME = 65536;
+
+	/**
+	 * threads encoding slices of large arenas - created when needed
+	 */
+	private static ExecutorService executor = null;
+
+	/**
+	 * @return executor for encoding slices
+	 */
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+			executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "SimpleSpleef snapshot encoder");
+					thread.setDaemon(true); // do not keep the server from shutting down
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+	/**
+	 * stop encoder threads - called when the plugin is disabled
+	 */
+	public static synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	/**
+	 * write snapshot of captured chunks to an output stream - stream is not closed; may be called asynchronously
+	 * Large arenas are run length encoded in parallel (ranges of slices), runs are stitched together in order afterwards.
+	 * @param capture
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void write(final ArenaSnapshotCapture capture, OutputStream out) throws IOException {
+		final int[] coords = capture.getCoords();
+		int sizeX = coords[3] - coords[0] + 1;
+		int sliceVolume = (coords[4] - coords[1] + 1) * (coords[5] - coords[2] + 1);
+		RegionMask mask = capture.getMask();
+
+		// run length encode slices - in parallel for large arenas
+		final int[][] runs = new int[sizeX][];
+		if (sizeX < 2 || sizeX * sliceVolume < PARALLEL_MIN_VOLUME)
+			encodeSlices(capture, 0, sizeX, runs);
+		else {
+			ExecutorService executor = getExecutor();
+			int parts = Math.min(sizeX, Runtime.getRuntime().availableProcessors() * 2);
+			List<Future<?>> futures = new ArrayList<Future<?>>(parts);
+			for (int i = 0; i < parts; i++) {
+				final int from = sizeX * i / parts;
+				final int to = sizeX * (i + 1) / parts;
+				futures.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						encodeSlices(capture, from, to, runs);
+					}
+				}));
+			}
+			try {
+				for (Future<?> future : futures)
+					future.get();
+			} catch (Exception e) {
+				throw new IOException("Could not encode snapshot: " + e.getMessage());
+			}
+		}
+
+		// stitch runs together: build palette and body in slice order
+		int[] palette = new int[16];
+		int paletteSize = 0;
+		// offsets of the slices within the body
+		int[] sliceOffsets = new int[sizeX];
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		for (int slice = 0; slice < sizeX; slice++) {
+			sliceOffsets[slice] = body.size();
+			int[] sliceRuns = runs[slice];
+			runs[slice] = null; // free memory early
+			for (int run = 1; run < sliceRuns[0]; run += 2) {
+				int value = sliceRuns[run + 1];
+				// find value in palette - palettes are small and this is only done once per run
+				int index = -1;
+				for (int i = 0; i < paletteSize; i++)
+					if (palette[i] == value) {
+						index = i;
+						break;
+					}
+				if (index < 0) { // new palette entry
+					if (paletteSize == palette.length) {
+						int[] newPalette = new int[palette.length * 2];
+						System.arraycopy(palette, 0, newPalette, 0, paletteSize);
+						palette = newPalette;
+					}
+					palette[paletteSize] = value;
+					index = paletteSize++;
+				}
+				writeVarInt(body, sliceRuns[run]);
+				writeVarInt(body, index);
+			}
+		}
+
+		// now write everything to the stream
+		CRC32 crc = new CRC32();
+		DataOutputStream os = new DataOutputStream(new CheckedOutputStream(out, crc));
+		os.writeInt(MAGIC);
+		os.writeByte(VERSION);
+		byte[] worldName = capture.getWorldName().getBytes("UTF-8");
+		os.writeShort(worldName.length);
+		os.write(worldName);
+		for (int i = 0; i < 6; i++)
+			os.writeInt(coords[i]);
+		os.writeByte(mask != null ? FLAG_MASK : 0);
+		if (mask != null) {
+			long[] words = mask.getWords();
+			os.writeInt(words.length);
+			for (int i = 0; i < words.length; i++)
+				os.writeLong(words[i]);
+		}
+		os.writeInt(paletteSize);
+		for (int i = 0; i < paletteSize; i++)
+			os.writeInt(palette[i]);
+		for (int i = 0; i < sizeX; i++)
+			os.writeInt(sliceOffsets[i]);
+		os.writeInt(body.size());
+		body.writeTo(os);
+		os.flush();
+		// checksum is not part of the checksum itself
+		new DataOutputStream(out).writeInt((int) crc.getValue());
+		out.flush();
+	}
+
+	/**
+	 * run length encode slices of a capture - may be called by several threads for different slices
+	 * @param capture
+	 * @param from first slice
+	 * @param to slice after the last one
+	 * @param runs result: one array per slice, element 0 is the used length, then pairs of run length and packed value
+	 */
+	private static void encodeSlices(ArenaSnapshotCapture capture, int from, int to, int[][] runs) {
+		int[] coords = capture.getCoords();
+		RegionMask mask = capture.getMask();
+		int sliceVolume = (coords[4] - coords[1] + 1) * (coords[5] - coords[2] + 1);
+
+		for (int slice = from; slice < to; slice++) {
+			int x = coords[0] + slice;
+			int index = slice * sliceVolume;
+			int[] sliceRuns = new int[33];
+			int used = 1;
+			int runValue = 0;
+			int runLength = 0;
+			for (int y = coords[1]; y <= coords[4]; y++)
+				for (int z = coords[2]; z <= coords[5]; z++) {
+					if (mask != null && !mask.get(index++)) continue; // outside of region
+					int value = capture.getBlock(x, y, z);
+					if (runLength > 0 && value == runValue) { // same as before - just extend run
+						runLength++;
+						continue;
+					}
+					// close previous run
+					if (runLength > 0) {
+						if (used + 2 > sliceRuns.length) sliceRuns = grow(sliceRuns);
+						sliceRuns[used++] = runLength;
+						sliceRuns[used++] = runValue;
+					}
+					runValue = value;
+					runLength = 1;
+				}
+			// close last run of slice
+			if (runLength > 0) {
+				if (used + 2 > sliceRuns.length) sliceRuns = grow(sliceRuns);
+				sliceRuns[used++] = runLength;
+				sliceRuns[used++] = runValue;
+			}
+			sliceRuns[0] = used;
+			runs[slice] = sliceRuns;
+		}
+	}
+
+	/**
+	 * @param array
+	 * @return copy of array with double size
+	 */
+	private static int[] grow(int[] array) {
+		int[] newArray = new int[array.length * 2];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+
+	/**
+	 * write unsigned variable length integer (7 bits per byte)
+	 * @param out
+	 * @param value
+	 */
+	protected static void writeVarInt(ByteArrayOutputStream out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+}
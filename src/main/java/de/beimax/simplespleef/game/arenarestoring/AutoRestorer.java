@@ -0,0 +1,147 @@
+/**
+ * 
+ */
+package de.beimax.simplespleef.game.arenarestoring;
+
+import de.beimax.simplespleef.SimpleSpleef;
+import de.beimax.simplespleef.game.Game;
+import de.beimax.simplespleef.game.floortracking.BlockChangeBatch;
+import de.beimax.simplespleef.game.floortracking.FloorTracker;
+import de.beimax.simplespleef.util.Cuboid;
+
+/**
+ * @author mkalus
+ * Keeps a soft journal as long as few blocks change. Once the journal exceeds a fraction of the cuboid volume,
+ * the current state of the arena is captured as a snapshot and the journal stops growing. Restoring then
+ * resets the snapshot the hard way (writing changed blocks only) and overlays the journal, which holds the
+ * original state of the blocks changed before the snapshot was taken.
+ */
+public class AutoRestorer extends SoftRestorer {
+	/**
+	 * fraction of the volume after which a snapshot is taken
+	 */
+	private final double threshold;
+
+	/**
+	 * milliseconds per tick for restoring the snapshot
+	 */
+	private final int tickBudget;
+
+	/**
+	 * maximum size of the journal
+	 */
+	private long maxJournalSize;
+
+	/**
+	 * a snapshot is to be taken in the next tick
+	 */
+	private volatile boolean snapshotPending = false;
+
+	/**
+	 * game has ended - no snapshot will be taken any more
+	 */
+	private volatile boolean stopped = false;
+
+	/**
+	 * sequence number of the last block change contained in the snapshot
+	 */
+	private volatile long snapshotSequence = 0;
+
+	/**
+	 * hard restorer holding the snapshot - set, once the snapshot has been taken
+	 */
+	private volatile HardArenaRestorer hardRestorer = null;
+
+	/**
+	 * Constructor
+	 * @param minRate minimum blocks restored per tick (soft)
+	 * @param maxRate maximum blocks restored per tick (soft)
+	 * @param tickBudget milliseconds per tick for restoring the snapshot (hard)
+	 * @param threshold fraction of the volume after which a snapshot is taken
+	 */
+	public AutoRestorer(int minRate, int maxRate, int tickBudget, double threshold) {
+		super(minRate, maxRate);
+		this.tickBudget = tickBudget;
+		this.threshold = threshold;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.game.arenarestoring.SoftRestorer#saveArena(de.beimax.simplespleef.game.Game, de.beimax.simplespleef.util.Cuboid)
+	 */
+	@Override
+	public void saveArena(Game game, Cuboid cuboid) {
+		super.saveArena(game, cuboid);
+		if (cuboid == null) return;
+
+		int[] coords = cuboid.getCoords();
+		long volume = (long) (coords[3] - coords[0] + 1) * (coords[4] - coords[1] + 1) * (coords[5] - coords[2] + 1);
+		maxJournalSize = (long) (volume * threshold);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.game.arenarestoring.SoftRestorer#updateBlocks(de.beimax.simplespleef.game.floortracking.BlockChangeBatch)
+	 */
+	@Override
+	public void updateBlocks(BlockChangeBatch changes) {
+		if (changedBlocks == null) return; // no NPEs
+		if (hardRestorer == null) super.updateBlocks(changes);
+		else {
+			// snapshot keeps track of everything from now on - only changes made before the snapshot was taken are journaled
+			for (int i = 0; i < changes.size(); i++)
+				if (changes.getSequence(i) <= snapshotSequence)
+					changedBlocks.add(changes.getX(i), changes.getY(i), changes.getZ(i), changes.getOldTypeId(i), changes.getOldData(i));
+			return;
+		}
+
+		// journal too large? Take snapshot in the next tick, not in the middle of a block change
+		if (!snapshotPending && changedBlocks.size() > maxJournalSize) {
+			snapshotPending = true;
+			SimpleSpleef.getPlugin().getServer().getScheduler().scheduleSyncDelayedTask(SimpleSpleef.getPlugin(), new Runnable() {
+				@Override
+				public void run() {
+					takeSnapshot();
+				}
+			});
+		}
+	}
+
+	/**
+	 * take snapshot of the current state of the arena - called in the main thread
+	 */
+	private void takeSnapshot() {
+		if (stopped) return; // too late, game has ended and arena might be being restored already
+
+		// snapshot shows the arena in the middle of the game, so it must not be cached
+		HardArenaRestorer restorer = new HardArenaRestorer(tickBudget, false) {
+			@Override
+			protected void finished() {
+				// overlay journal, this will finish the game off
+				AutoRestorer.super.restoreArena();
+			}
+		};
+		// changes are delivered to the journal a tick later - remember which ones the snapshot contains already
+		snapshotSequence = FloorTracker.getLastSequence();
+		restorer.saveArena(game, cuboid);
+		hardRestorer = restorer;
+		SimpleSpleef.log.info("[SimpleSpleef] Arena " + game.getId() + ": more than " + maxJournalSize + " blocks changed, switched to snapshot.");
+	}
+
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.game.arenarestoring.SoftRestorer#stopTracking()
+	 */
+	@Override
+	public void stopTracking() {
+		stopped = true;
+		super.stopTracking();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.game.arenarestoring.SoftRestorer#restoreArena()
+	 */
+	@Override
+	public void restoreArena() {
+		stopped = true;
+		if (hardRestorer != null) hardRestorer.restoreArena(); // snapshot first, journal afterwards
+		else super.restoreArena(); // journal only
+	}
+}
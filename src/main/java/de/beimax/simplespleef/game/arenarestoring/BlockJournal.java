@@ -0,0 +1,238 @@
+/**
+ * 
+ */
+package de.beimax.simplespleef.game.arenarestoring;
+
+import java.util.Arrays;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import de.beimax.simplespleef.util.Cuboid;
+import de.beimax.simplespleef.util.LongHashSet;
+import de.beimax.simplespleef.util.PackedBlock;
+
+/**
+ * @author mkalus
+ * Journal of original block states backed by primitive arrays: positions are packed into longs relative to
+ * the origin of the cuboid, type and data into ints. The arrays grow in pages, so they are never copied.
+ * Only the first state seen of each position is kept, so the journal never grows beyond the number of blocks changed.
+ */
+public class BlockJournal {
+	/**
+	 * entries per page
+	 */
+	private static final int PAGE_SIZE = 1024;
+
+	/**
+	 * world of cuboid
+	 */
+	private final World world;
+
+	/**
+	 * origin of cuboid
+	 */
+	private final int originX;
+	private final int originY;
+	private final int originZ;
+
+	/**
+	 * pages of packed positions and packed block values
+	 */
+	private long[][] positions = new long[16][];
+	private int[][] blocks = new int[16][];
+
+	/**
+	 * number of entries
+	 */
+	private int size = 0;
+
+	/**
+	 * positions already in the journal
+	 */
+	private final LongHashSet seen = new LongHashSet();
+
+	/**
+	 * persistent copy of the journal, may be null
+	 */
+	private JournalFile journalFile = null;
+
+	/**
+	 * Constructor
+	 * @param cuboid
+	 */
+	public BlockJournal(Cuboid cuboid) {
+		this(cuboid.getWorld(), cuboid.getCoords()[0], cuboid.getCoords()[1], cuboid.getCoords()[2]);
+	}
+
+	/**
+	 * Constructor
+	 * @param world
+	 * @param originX
+	 * @param originY
+	 * @param originZ
+	 */
+	public BlockJournal(World world, int originX, int originY, int originZ) {
+		this.world = world;
+		this.originX = originX;
+		this.originY = originY;
+		this.originZ = originZ;
+	}
+
+	/**
+	 * keep a persistent copy of all entries added from now on
+	 * @param journalFile
+	 */
+	public void setJournalFile(JournalFile journalFile) {
+		this.journalFile = journalFile;
+	}
+
+	/**
+	 * @return persistent copy of the journal or null
+	 */
+	public JournalFile getJournalFile() {
+		return journalFile;
+	}
+
+	/**
+	 * @return world of journal
+	 */
+	public World getWorld() {
+		return world;
+	}
+
+	/**
+	 * @return origin of journal: int[]{x, y, z}
+	 */
+	public int[] getOrigin() {
+		return new int[]{originX, originY, originZ};
+	}
+
+	/**
+	 * add original state of block - ignored, if the block is in the journal already
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param typeId
+	 * @param data
+	 */
+	public void add(int x, int y, int z, int typeId, byte data) {
+		addPacked(PackedBlock.packPosition(x - originX, y - originY, z - originZ), PackedBlock.pack(typeId, data));
+	}
+
+	/**
+	 * add original state of block - ignored, if the block is in the journal already
+	 * @param position packed position relative to the origin
+	 * @param value packed type/data value
+	 */
+	protected void addPacked(long position, int value) {
+		if (!seen.add(position)) return; // keep first state only
+
+		int page = size / PAGE_SIZE;
+		if (page == positions.length) { // more pages needed
+			long[][] newPositions = new long[positions.length * 2][];
+			System.arraycopy(positions, 0, newPositions, 0, positions.length);
+			positions = newPositions;
+			int[][] newBlocks = new int[blocks.length * 2][];
+			System.arraycopy(blocks, 0, newBlocks, 0, blocks.length);
+			blocks = newBlocks;
+		}
+		if (positions[page] == null) {
+			positions[page] = new long[PAGE_SIZE];
+			blocks[page] = new int[PAGE_SIZE];
+		}
+		positions[page][size % PAGE_SIZE] = position;
+		blocks[page][size % PAGE_SIZE] = value;
+		size++;
+
+		if (journalFile != null) journalFile.append(position, value);
+	}
+
+	/**
+	 * @return number of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return iterator restoring the journal chunk by chunk
+	 */
+	public RestoreIterator restoreIterator() {
+		return new RestoreIterator();
+	}
+
+	/**
+	 * restores entries directly from the arrays, grouped by chunk and sorted by y within each chunk, so each chunk
+	 * is only looked up once per group. The order of changes does not matter, because each block is in the journal once only.
+	 * @author mkalus
+	 *
+	 */
+	public class RestoreIterator {
+		/**
+		 * restore plan: sort keys of chunk x (12 bits), chunk z (12 bits), y (12 bits) and entry index (28 bits)
+		 */
+		private final long[] plan;
+
+		/**
+		 * next entry of the plan to restore
+		 */
+		private int next = 0;
+
+		/**
+		 * current chunk
+		 */
+		private Chunk chunk = null;
+		private int chunkX;
+		private int chunkZ;
+
+		/**
+		 * Constructor - creates plan
+		 */
+		public RestoreIterator() {
+			plan = new long[size];
+			for (int i = 0; i < size; i++) {
+				long position = positions[i / PAGE_SIZE][i % PAGE_SIZE];
+				// chunk coordinates relative to the chunk of the origin
+				long cx = ((originX + PackedBlock.getX(position)) >> 4) - (originX >> 4) + 2048;
+				long cz = ((originZ + PackedBlock.getZ(position)) >> 4) - (originZ >> 4) + 2048;
+				long y = PackedBlock.getY(position) + 2048;
+				plan[i] = (cx & 0xFFF) << 52 | (cz & 0xFFF) << 40 | (y & 0xFFF) << 28 | i;
+			}
+			Arrays.sort(plan);
+		}
+
+		/**
+		 * @return true, if there are entries left
+		 */
+		public boolean hasNext() {
+			return next < plan.length;
+		}
+
+		/**
+		 * restore next entry
+		 */
+		public void restoreNext() {
+			int index = (int) (plan[next++] & 0xFFFFFFF);
+			long position = positions[index / PAGE_SIZE][index % PAGE_SIZE];
+			int value = blocks[index / PAGE_SIZE][index % PAGE_SIZE];
+
+			int x = originX + PackedBlock.getX(position);
+			int z = originZ + PackedBlock.getZ(position);
+			// resolve chunk once per group
+			if (chunk == null || chunkX != x >> 4 || chunkZ != z >> 4) {
+				chunkX = x >> 4;
+				chunkZ = z >> 4;
+				chunk = world.getChunkAt(chunkX, chunkZ);
+			}
+
+			Block block = chunk.getBlock(x & 15, originY + PackedBlock.getY(position), z & 15);
+			int typeId = PackedBlock.getTypeId(value);
+			byte data = PackedBlock.getData(value);
+			// blocks put back by players already do not need to be written again
+			if (block.getTypeId() != typeId || block.getData() != data)
+				block.setTypeIdAndData(typeId, data, true);
+		}
+	}
+}
@@ -3,16 +3,20 @@
  */
 package de.beimax.simplespleef.game.arenarestoring;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
 
 import de.beimax.simplespleef.SimpleSpleef;
 import de.beimax.simplespleef.game.Game;
 import de.beimax.simplespleef.util.Cuboid;
-import de.beimax.simplespleef.util.SerializableBlockData;
 
 /**
  * @author mkalus
@@ -29,6 +33,39 @@ public class HardArenaRestorer implements ArenaRestorer {
 	 */
 	private Cuboid cuboid;
 
+	/**
+	 * milliseconds per server tick that may be spent restoring the arena (0 or less restores everything at once)
+	 */
+	private final int tickBudget;
+
+	/**
+	 * background task writing the snapshot - restoring waits until it has finished
+	 */
+	private FutureTask<Boolean> saveTask;
+
+	/**
+	 * put captured snapshots into the snapshot cache - only if they are taken before the game starts
+	 */
+	private final boolean cacheCapture;
+
+	/**
+	 * Constructor
+	 * @param tickBudget milliseconds per server tick that may be spent restoring the arena
+	 */
+	public HardArenaRestorer(int tickBudget) {
+		this(tickBudget, true);
+	}
+
+	/**
+	 * Constructor
+	 * @param tickBudget milliseconds per server tick that may be spent restoring the arena
+	 * @param cacheCapture put captured snapshots into the snapshot cache (only for untouched arenas)
+	 */
+	public HardArenaRestorer(int tickBudget, boolean cacheCapture) {
+		this.tickBudget = tickBudget;
+		this.cacheCapture = cacheCapture;
+	}
+
 	/* (non-Javadoc)
 	 * @see de.beimax.simplespleef.game.arenarestoring.ArenaRestorer#saveArena(de.beimax.simplespleef.game.Game)
 	 */
@@ -38,26 +75,51 @@ public class HardArenaRestorer implements ArenaRestorer {
 		this.game = game;
 		this.cuboid = cuboid;
 
-		SerializableBlockData[][][] blockData = this.cuboid.getSerializedBlocks();
-		
 		// output file
-		File file = new File(SimpleSpleef.getPlugin().getDataFolder(), "arena_" + this.game.getId() + ".save");
-		// delete old file
-		if (file.exists() && !file.delete()) {
-			SimpleSpleef.log.warning("[SimpleSpleef] Could not delete file " + file.getName());
-			return;
-		}
-		
-		try {
-			// serialize objects
-			FileOutputStream fileStream = new FileOutputStream(file);
-			ObjectOutputStream os = new ObjectOutputStream(fileStream);
-			// write array itself
-			os.writeObject(blockData);
-			os.close();
-		} catch (Exception e) {
-			 SimpleSpleef.log.warning("[SimpleSpleef] Could not save arena file " + file.getName() + ". Reason: " + e.getMessage());
-		}
+		final File file = new File(SimpleSpleef.getPlugin().getDataFolder(), "arena_" + this.game.getId() + ".save");
+
+		// arena is the same as after the last round? Then reuse the cached snapshot
+		final ArenaSnapshotCache.CachedSnapshot cached = ArenaSnapshotCache.get(game.getId(), cuboid);
+		// otherwise capture chunks in the main thread - encoding and writing is done in the background
+		final ArenaSnapshotCapture capture = cached == null ? ArenaSnapshotCapture.capture(cuboid) : null;
+		final String arena = game.getId();
+		final String definition = cuboid.getDefinition();
+		// cache settings are read here - the configuration must not be read in the background
+		final long cacheSize = SimpleSpleef.getPlugin().getConfig().getLong("settings.arenaSnapshotCacheSize", 16384) * 1024;
+		final boolean cacheDirect = SimpleSpleef.getPlugin().getConfig().getBoolean("settings.arenaSnapshotCacheDirect", false);
+		saveTask = new FutureTask<Boolean>(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				// delete old file
+				if (file.exists() && !file.delete()) {
+					SimpleSpleef.log.warning("[SimpleSpleef] Could not delete file " + file.getName());
+					return false;
+				}
+
+				try {
+					// encode snapshot, if not cached
+					ByteArrayOutputStream snapshot = null;
+					if (cached == null) {
+						snapshot = new ByteArrayOutputStream();
+						ArenaSnapshotWriter.write(capture, snapshot);
+						if (cacheCapture) ArenaSnapshotCache.put(arena, definition, snapshot.toByteArray(), cacheSize, cacheDirect);
+					}
+					// write snapshot
+					OutputStream os = new BufferedOutputStream(new FileOutputStream(file));
+					try {
+						if (snapshot != null) snapshot.writeTo(os);
+						else cached.writeTo(os);
+					} finally {
+						os.close();
+					}
+				} catch (Exception e) {
+					 SimpleSpleef.log.warning("[SimpleSpleef] Could not save arena file " + file.getName() + ". Reason: " + e.getMessage());
+					 return false;
+				}
+				return true;
+			}
+		});
+		SimpleSpleef.getPlugin().getServer().getScheduler().scheduleAsyncDelayedTask(SimpleSpleef.getPlugin(), saveTask);
 	}
 
 	/* (non-Javadoc)
@@ -65,29 +127,141 @@ public class HardArenaRestorer implements ArenaRestorer {
 	 */
 	@Override
 	public void restoreArena() {
-		// input file
-		File file = new File(SimpleSpleef.getPlugin().getDataFolder(), "arena_" + game.getId() + ".save");
+		if (saveTask == null) return; // arena has never been saved
+		final File file = new File(SimpleSpleef.getPlugin().getDataFolder(), "arena_" + game.getId() + ".save");
+		final FutureTask<Boolean> writtenTask = saveTask;
+
+		// open and verify snapshot in the background, as soon as it has been written
+		FutureTask<ArenaSnapshotReader> openTask = new FutureTask<ArenaSnapshotReader>(new Callable<ArenaSnapshotReader>() {
+			@Override
+			public ArenaSnapshotReader call() throws Exception {
+				writtenTask.get(); // wait for writing to finish
+				return openSnapshot(file);
+			}
+		});
+		SimpleSpleef.getPlugin().getServer().getScheduler().scheduleAsyncDelayedTask(SimpleSpleef.getPlugin(), openTask);
+
+		// start restore task called every tick - it has to run in the main thread, because it changes the world
+		RestoreWorker worker = new RestoreWorker(file, openTask);
+		worker.schedulerId = SimpleSpleef.getPlugin().getServer().getScheduler().scheduleSyncRepeatingTask(SimpleSpleef.getPlugin(), worker, 0L, 1L);
+	}
+
+	/**
+	 * open snapshot file
+	 * @param file
+	 * @return reader or null, if the file could not be read
+	 */
+	private ArenaSnapshotReader openSnapshot(File file) {
 		if (!file.exists()) {
 			SimpleSpleef.log.warning("[SimpleSpleef] Could find arena file " + file.getName());
-			return;
+			return null;
 		}
-		SerializableBlockData[][][] blockData;
 		try {
-			// deserialize objects
-			FileInputStream fileInputStream = new FileInputStream(file);
-			ObjectInputStream oInputStream = new ObjectInputStream(fileInputStream);
-			blockData = (SerializableBlockData[][][]) oInputStream.readObject();
-			oInputStream.close();
+			// map snapshot into memory - the mapping stays valid after the channel has been closed
+			RandomAccessFile raFile = new RandomAccessFile(file, "r");
+			MappedByteBuffer buffer;
+			try {
+				FileChannel channel = raFile.getChannel();
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			} finally {
+				raFile.close();
+			}
+			return new ArenaSnapshotReader(buffer);
 		} catch (Exception e) {
 			 SimpleSpleef.log.warning("[SimpleSpleef] Could not restore arena file " + file.getName() + ". Reason: " + e.getMessage());
-			 return;
+			 return null;
+		}
+	}
+
+	/**
+	 * restorer task - called every server tick, restores part of the arena within the tick budget
+	 * @author mkalus
+	 *
+	 */
+	private class RestoreWorker implements Runnable {
+		private int schedulerId = -1;
+
+		/**
+		 * snapshot file
+		 */
+		private File file;
+
+		/**
+		 * background task opening the snapshot
+		 */
+		private FutureTask<ArenaSnapshotReader> openTask;
+
+		/**
+		 * reader of the snapshot, keeps the position of the restoring process
+		 */
+		private ArenaSnapshotReader reader = null;
+
+		/**
+		 * last progress reported in percent
+		 */
+		private int reported = 0;
+
+		/**
+		 * Constructor
+		 * @param file
+		 * @param openTask
+		 */
+		public RestoreWorker(File file, FutureTask<ArenaSnapshotReader> openTask) {
+			this.file = file;
+			this.openTask = openTask;
+		}
+
+		@Override
+		public void run() {
+			if (saveTask == null) return; // finished already
+			if (reader == null) {
+				if (!openTask.isDone()) return; // snapshot is still being written or verified - wait for next tick
+				if (SimpleSpleef.getBlockMutationQueue().hasPending(game)) return; // block changes of the game still queued - wait for them to be written
+				try {
+					reader = openTask.get();
+				} catch (Exception e) {
+					SimpleSpleef.log.warning("[SimpleSpleef] Could not restore arena file " + file.getName() + ". Reason: " + e.getMessage());
+				}
+				if (reader == null) { // could not open snapshot - give up
+					SimpleSpleef.getPlugin().getServer().getScheduler().cancelTask(schedulerId);
+					return;
+				}
+			}
+
+			// restore part of the arena - this is quite heavy on the server, so it is spread over several ticks
+			boolean finished = reader.restore(cuboid, tickBudget > 0 ? tickBudget * 1000000L : Long.MAX_VALUE);
+
+			// report progress in steps of 25%
+			int progress = (int) (reader.getProgress() * 100);
+			if (!finished && progress >= reported + 25) {
+				reported = progress - progress % 25;
+				SimpleSpleef.log.info("[SimpleSpleef] Restoring arena " + game.getId() + ": " + reported + "%");
+			}
+
+			// have we finished?
+			if (finished) {
+				// stop scheduler task
+				SimpleSpleef.getPlugin().getServer().getScheduler().cancelTask(schedulerId);
+				SimpleSpleef.log.info("[SimpleSpleef] Restored arena " + game.getId() + ": " + reader.getWritten() + " blocks written, " + reader.getSkipped() + " unchanged blocks skipped.");
+				reader = null; // release mapping before deleting the file
+				saveTask = null;
+				// delete file at the end - cleanup work...
+				if (!file.delete()) {
+					// some systems do not allow deleting files that are still mapped - try again when shutting down
+					file.deleteOnExit();
+					SimpleSpleef.log.warning("[SimpleSpleef] Could not delete file " + file.getName());
+				}
+
+				finished();
+			}
 		}
-		// restore arena - this is quite heavy on the server...
-		cuboid.setSerializedBlocks(blockData);
-		// delete file at the end - cleanup work...
-		if (!file.delete()) SimpleSpleef.log.warning("[SimpleSpleef] Could not delete file " + file.getName());
-		
+	}
+
+	/**
+	 * called when the arena has been restored
+	 */
+	protected void finished() {
 		// call game handler to finish the game off
-		SimpleSpleef.getGameHandler().gameOver(game);			
+		SimpleSpleef.getGameHandler().gameOver(game);
 	}
 }
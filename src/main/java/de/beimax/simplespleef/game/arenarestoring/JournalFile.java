@@ -0,0 +1,206 @@
+/**
+ * 
+ */
+package de.beimax.simplespleef.game.arenarestoring;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.bukkit.Server;
+import org.bukkit.World;
+
+import de.beimax.simplespleef.SimpleSpleef;
+
+/**
+ * @author mkalus
+ * Append-only file copy of a block journal, so changed arenas can be restored after a server crash.
+ * Entries are collected in memory and written to disk by an asynchronous task once per second (group commit),
+ * so appending never blocks the main thread.
+ *
+ * Format: int MAGIC, byte VERSION, UTF world name, int[3] origin, followed by entries (long packed position, int packed block).
+ */
+public class JournalFile {
+	/**
+	 * magic number at the start of each journal ("SSJL")
+	 */
+	public static final int MAGIC = 0x53534A4C;
+
+	/**
+	 * current version of the format
+	 */
+	public static final byte VERSION = 1;
+
+	/**
+	 * journal file
+	 */
+	private final File file;
+
+	/**
+	 * world and origin of journal
+	 */
+	private final String worldName;
+	private final int[] origin;
+
+	/**
+	 * entries not written to disk yet
+	 */
+	private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+	private DataOutputStream pendingData = new DataOutputStream(pending);
+
+	/**
+	 * output stream - opened by the first flush
+	 */
+	private FileOutputStream out = null;
+
+	/**
+	 * lock for file operations
+	 */
+	private final Object fileLock = new Object();
+
+	/**
+	 * journal has been deleted
+	 */
+	private boolean deleted = false;
+
+	/**
+	 * id of flush task
+	 */
+	private int schedulerId = -1;
+
+	/**
+	 * Constructor
+	 * @param file
+	 * @param journal journal to copy entries of
+	 */
+	public JournalFile(File file, BlockJournal journal) {
+		this.file = file;
+		this.worldName = journal.getWorld().getName();
+		this.origin = journal.getOrigin();
+	}
+
+	/**
+	 * start writing entries to disk periodically
+	 */
+	public void start() {
+		schedulerId = SimpleSpleef.getPlugin().getServer().getScheduler().scheduleAsyncRepeatingTask(SimpleSpleef.getPlugin(), new Runnable() {
+			@Override
+			public void run() {
+				flush();
+			}
+		}, 0L, 20L);
+	}
+
+	/**
+	 * append entry - only kept in memory until the next flush
+	 * @param position packed position relative to the origin
+	 * @param value packed type/data value
+	 */
+	public synchronized void append(long position, int value) {
+		try {
+			pendingData.writeLong(position);
+			pendingData.writeInt(value);
+		} catch (IOException e) {} // cannot happen on byte array streams
+	}
+
+	/**
+	 * write pending entries to disk and force them onto the device - does nothing, if there are no new entries
+	 */
+	public void flush() {
+		byte[] data;
+		synchronized (this) {
+			data = pending.toByteArray();
+			pending.reset();
+		}
+
+		synchronized (fileLock) {
+			if (deleted) return;
+			if (data.length == 0 && out != null) return; // nothing new - header has been written already
+			try {
+				if (out == null) { // first flush: write header
+					out = new FileOutputStream(file);
+					DataOutputStream header = new DataOutputStream(out);
+					header.writeInt(MAGIC);
+					header.writeByte(VERSION);
+					header.writeUTF(worldName);
+					for (int i = 0; i < 3; i++)
+						header.writeInt(origin[i]);
+				}
+				out.write(data);
+				out.flush();
+				out.getFD().sync();
+			} catch (Exception e) {
+				SimpleSpleef.log.warning("[SimpleSpleef] Could not write journal file " + file.getName() + ". Reason: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * stop writing and delete the journal - call when the arena has been restored
+	 */
+	public void delete() {
+		if (schedulerId != -1)
+			SimpleSpleef.getPlugin().getServer().getScheduler().cancelTask(schedulerId);
+
+		synchronized (fileLock) {
+			deleted = true;
+			try {
+				if (out != null) out.close();
+			} catch (Exception e) {} // ignore
+			if (file.exists() && !file.delete())
+				SimpleSpleef.log.warning("[SimpleSpleef] Could not delete file " + file.getName());
+		}
+	}
+
+	/**
+	 * read a journal file - a torn last entry is ignored
+	 * @param file
+	 * @return journal or null, if the world does not exist (anymore)
+	 * @throws IOException if the journal is invalid
+	 */
+	public static BlockJournal read(File file) throws IOException {
+		return read(file, SimpleSpleef.getPlugin().getServer());
+	}
+
+	/**
+	 * read a journal file - a torn last entry is ignored
+	 * @param file
+	 * @param server server to look up the world of the journal
+	 * @return journal or null, if the world does not exist (anymore)
+	 * @throws IOException if the journal is invalid
+	 */
+	static BlockJournal read(File file, Server server) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try {
+			if (in.readInt() != MAGIC) throw new IOException("Not a journal.");
+			byte version = in.readByte();
+			if (version != VERSION) throw new IOException("Unknown journal version " + version + ".");
+			String worldName = in.readUTF();
+			World world = server.getWorld(worldName);
+			if (world == null) return null;
+			BlockJournal journal = new BlockJournal(world, in.readInt(), in.readInt(), in.readInt());
+
+			// read entries until the end of the file
+			while (true) {
+				long position;
+				int value;
+				try {
+					position = in.readLong();
+					value = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				journal.addPacked(position, value);
+			}
+			return journal;
+		} finally {
+			in.close();
+		}
+	}
+}
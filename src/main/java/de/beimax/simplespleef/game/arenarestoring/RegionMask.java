@@ -0,0 +1,80 @@
+/**
+ * 
+ */
+package de.beimax.simplespleef.game.arenarestoring;
+
+import de.beimax.simplespleef.util.Cuboid;
+
+/**
+ * @author mkalus
+ * Membership bitmask of a non-cuboid region (e.g. WorldGuard polygons) within its bounding box. Bits are indexed
+ * in snapshot order: x slices, y, then z.
+ */
+public class RegionMask {
+	/**
+	 * bits
+	 */
+	private final long[] words;
+
+	/**
+	 * precompute mask of a cuboid - takes time proportional to the volume, so call it asynchronously
+	 * @param cuboid
+	 * @return mask or null, if the cuboid fills its bounding box completely
+	 */
+	public static RegionMask create(Cuboid cuboid) {
+		if (cuboid.isRectangular()) return null; // nothing to mask
+		int[] coords = cuboid.getCoords();
+		int volume = (coords[3] - coords[0] + 1) * (coords[4] - coords[1] + 1) * (coords[5] - coords[2] + 1);
+		long[] words = new long[(volume + 63) >> 6];
+
+		boolean full = true;
+		int index = 0;
+		for (int x = coords[0]; x <= coords[3]; x++)
+			for (int y = coords[1]; y <= coords[4]; y++)
+				for (int z = coords[2]; z <= coords[5]; z++) {
+					if (cuboid.contains(x, y, z)) words[index >> 6] |= 1L << index;
+					else full = false;
+					index++;
+				}
+
+		return full ? null : new RegionMask(words);
+	}
+
+	/**
+	 * Constructor
+	 * @param words
+	 */
+	public RegionMask(long[] words) {
+		this.words = words;
+	}
+
+	/**
+	 * @return bits as words - do not change
+	 */
+	public long[] getWords() {
+		return words;
+	}
+
+	/**
+	 * @param index
+	 * @return true, if the bit is set
+	 */
+	public boolean get(int index) {
+		return (words[index >> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * @param from
+	 * @return index of the next set bit starting at from or -1, if there is none
+	 */
+	public int nextSetBit(int from) {
+		int word = from >> 6;
+		if (word >= words.length) return -1;
+		long bits = words[word] & (-1L << from);
+		while (true) {
+			if (bits != 0) return (word << 6) + Long.numberOfTrailingZeros(bits);
+			if (++word == words.length) return -1;
+			bits = words[word];
+		}
+	}
+}
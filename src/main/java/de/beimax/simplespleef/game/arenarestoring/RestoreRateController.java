@@ -0,0 +1,98 @@
+/**
+ * 
+ */
+package de.beimax.simplespleef.game.arenarestoring;
+
+/**
+ * @author mkalus
+ * Controls the number of blocks restored per tick: measures how long each batch takes and how long server ticks
+ * currently take. The rate is raised while there is headroom and lowered when batches get too slow or the server lags.
+ */
+public class RestoreRateController {
+	/**
+	 * length of a server tick at 20 ticks per second
+	 */
+	private static final long TICK_NANOS = 50000000L;
+
+	/**
+	 * ticks longer than this mean the server is lagging
+	 */
+	private static final long LAG_NANOS = TICK_NANOS * 11 / 10;
+
+	/**
+	 * time per tick a batch should take at most
+	 */
+	private static final long BATCH_NANOS = 5000000L;
+
+	/**
+	 * bounds of the rate
+	 */
+	private final int minRate;
+	private final int maxRate;
+
+	/**
+	 * current number of blocks per tick
+	 */
+	private int rate;
+
+	/**
+	 * start of the current and the last batch
+	 */
+	private long batchStart = 0;
+	private long lastBatchStart = 0;
+
+	/**
+	 * smoothed tick duration
+	 */
+	private long tickNanos = TICK_NANOS;
+
+	/**
+	 * Constructor
+	 * @param minRate minimum blocks per tick
+	 * @param maxRate maximum blocks per tick
+	 */
+	public RestoreRateController(int minRate, int maxRate) {
+		this.minRate = minRate < 1 ? 1 : minRate;
+		this.maxRate = maxRate < this.minRate ? this.minRate : maxRate;
+		this.rate = Math.max(this.minRate, Math.min(this.maxRate, 40)); // start with old fixed rate
+	}
+
+	/**
+	 * start a batch
+	 * @return number of blocks to restore in this batch
+	 */
+	public int startBatch() {
+		batchStart = nanoTime();
+		if (lastBatchStart != 0) // batches are started once per tick, so the time in between is the tick duration
+			tickNanos = (tickNanos * 3 + (batchStart - lastBatchStart)) / 4;
+		lastBatchStart = batchStart;
+		return rate;
+	}
+
+	/**
+	 * end a batch and adapt the rate
+	 * @param restored number of blocks restored in this batch
+	 */
+	public void endBatch(int restored) {
+		long batchNanos = nanoTime() - batchStart;
+
+		if (tickNanos > LAG_NANOS || batchNanos > BATCH_NANOS * 2) // server is lagging or batch took too long: back off fast
+			rate = Math.max(minRate, rate / 2);
+		else if (restored >= rate && batchNanos < BATCH_NANOS) // headroom: increase slowly
+			rate = Math.min(maxRate, rate + Math.max(1, rate / 4));
+	}
+
+	/**
+	 * @return current number of blocks per tick
+	 */
+	public int getRate() {
+		return rate;
+	}
+
+	/**
+	 * @return current time in nanoseconds
+	 */
+	protected long nanoTime() {
+		return System.nanoTime();
+	}
+}
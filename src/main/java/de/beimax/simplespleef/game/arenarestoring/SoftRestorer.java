@@ -3,18 +3,13 @@
  */
 package de.beimax.simplespleef.game.arenarestoring;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
-
-import org.bukkit.Location;
-import org.bukkit.block.Block;
+import java.io.File;
 
 import de.beimax.simplespleef.SimpleSpleef;
 import de.beimax.simplespleef.game.Game;
+import de.beimax.simplespleef.game.floortracking.BlockChangeBatch;
 import de.beimax.simplespleef.game.floortracking.FloorWorker;
 import de.beimax.simplespleef.util.Cuboid;
-import de.beimax.simplespleef.util.SerializableBlockData;
 
 /**
  * @author mkalus
@@ -29,12 +24,12 @@ public class SoftRestorer implements ArenaRestorer, FloorWorker {
 	/**
 	 * game to restore
 	 */
-	private Game game;
+	protected Game game;
 	
 	/**
 	 * cuboid to store/restore
 	 */
-	private Cuboid cuboid;
+	protected Cuboid cuboid;
 	
 	/**
 	 * worker has finished restoring?
@@ -44,13 +39,35 @@ public class SoftRestorer implements ArenaRestorer, FloorWorker {
 	/**
 	 * keeps the data of the changed blocks
 	 */
-	private LinkedList<BlockChange> changedBlocks;
+	protected BlockJournal changedBlocks;
+
+	/**
+	 * controls the number of blocks restored per tick
+	 */
+	private final RestoreRateController rateController;
+
+	/**
+	 * Constructor
+	 * @param minRate minimum blocks restored per tick
+	 * @param maxRate maximum blocks restored per tick
+	 */
+	public SoftRestorer(int minRate, int maxRate) {
+		rateController = new RestoreRateController(minRate, maxRate);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.game.floortracking.FloorWorker#initialize(de.beimax.simplespleef.game.Game, de.beimax.simplespleef.util.Cuboid)
+	 */
+	@Override
+	public void initialize(Game game, Cuboid floor) {
+		//Do nothing
+	}
 
 	/* (non-Javadoc)
-	 * @see de.beimax.simplespleef.game.floortracking.FloorWorker#initialize(de.beimax.simplespleef.game.Game, java.util.List)
+	 * @see de.beimax.simplespleef.game.floortracking.FloorWorker#initializeBlock(int, int, int, int, byte)
 	 */
 	@Override
-	public void initialize(Game game, List<Block> floor) {
+	public void initializeBlock(int x, int y, int z, int typeId, byte data) {
 		//Do nothing
 	}
 
@@ -63,18 +80,14 @@ public class SoftRestorer implements ArenaRestorer, FloorWorker {
 	}
 
 	/* (non-Javadoc)
-	 * @see de.beimax.simplespleef.game.floortracking.FloorWorker#updateBlock(org.bukkit.block.Block)
+	 * @see de.beimax.simplespleef.game.floortracking.FloorWorker#updateBlocks(de.beimax.simplespleef.game.floortracking.BlockChangeBatch)
 	 */
 	@Override
-	public void updateBlock(Block block, int oldType, byte oldData) {
-		if (block == null || changedBlocks == null) return; // no NPEs
-		// just add original block type to list
-		BlockChange change = new BlockChange();
-		change.location = block.getLocation();
-		change.blockData = new SerializableBlockData(oldType, oldData);
-		// add at first position, so the restoration is done from the last block changed
-		changedBlocks.addFirst(change);
-		//System.out.println("Added!");
+	public void updateBlocks(BlockChangeBatch changes) {
+		if (changedBlocks == null) return; // no NPEs
+		// just add original block types to journal
+		for (int i = 0; i < changes.size(); i++)
+			changedBlocks.add(changes.getX(i), changes.getY(i), changes.getZ(i), changes.getOldTypeId(i), changes.getOldData(i));
 	}
 
 	/* (non-Javadoc)
@@ -90,7 +103,12 @@ public class SoftRestorer implements ArenaRestorer, FloorWorker {
 		this.cuboid = cuboid;
 
 		// initialize task data
-		this.changedBlocks = new LinkedList<SoftRestorer.BlockChange>();
+		this.changedBlocks = new BlockJournal(cuboid);
+
+		// keep a copy of the journal on disk, so the arena can be restored after a crash
+		JournalFile journalFile = new JournalFile(new File(SimpleSpleef.getPlugin().getDataFolder(), "journal_" + game.getId() + ".log"), changedBlocks);
+		changedBlocks.setJournalFile(journalFile);
+		journalFile.start();
 	}
 
 	/* (non-Javadoc)
@@ -101,20 +119,10 @@ public class SoftRestorer implements ArenaRestorer, FloorWorker {
 		if (changedBlocks == null) return;
 		RestoreWorker worker = new RestoreWorker();
 
-		// start restore task called every tick
-		worker.schedulerId = SimpleSpleef.getPlugin().getServer().getScheduler().scheduleAsyncRepeatingTask(SimpleSpleef.getPlugin(), worker, 0L, 1L);
+		// start restore task called every tick - it has to run in the main thread, because it changes the world
+		worker.schedulerId = SimpleSpleef.getPlugin().getServer().getScheduler().scheduleSyncRepeatingTask(SimpleSpleef.getPlugin(), worker, 0L, 1L);
 	}
 	
-	/**
-	 * keeps original positions for blocks
-	 * @author mkalus
-	 *
-	 */
-	private class BlockChange {
-		private Location location;
-		private SerializableBlockData blockData;
-	}
-
 	@Override
 	public void tick() {
 		if (game == null || cuboid == null) return; //ignore invalid stuff
@@ -139,31 +147,37 @@ public class SoftRestorer implements ArenaRestorer, FloorWorker {
 	private class RestoreWorker implements Runnable {
 		private int schedulerId = -1;
 		
-		Iterator<BlockChange> it = null;
+		BlockJournal.RestoreIterator it = null;
 		
 		@Override
 		public void run() {
 			// just started
-			if (it == null)
-				it = changedBlocks.iterator();
+			if (it == null) {
+				// block changes of the game still queued? Wait until they are written and journaled
+				if (SimpleSpleef.getBlockMutationQueue().hasPending(game)) return;
+				it = changedBlocks.restoreIterator();
+			}
 
-			// 40 blocks per tick max
-			for (int i = 0; i < 40; i++) {
+			// number of blocks per tick depends on server load
+			int max = rateController.startBatch();
+			int i;
+			for (i = 0; i < max; i++) {
 				if (!it.hasNext()) {
 					isStopped = true; // yes, we are finished
 					break;
 				} else { // restore blocks
-					BlockChange changedBlock = it.next();
-					Block block = changedBlock.location.getBlock();
-					block.setTypeId(changedBlock.blockData.getTypeId());
-					block.setData(changedBlock.blockData.getData());	
+					it.restoreNext();
 				}
 			}
+			rateController.endBatch(i);
 			
 			// have we finished?
 			if (isStopped) {
 				// stop scheduler task
 				SimpleSpleef.getPlugin().getServer().getScheduler().cancelTask(schedulerId);
+				// arena has been restored, journal is not needed any more
+				if (changedBlocks.getJournalFile() != null)
+					changedBlocks.getJournalFile().delete();
 				// call game handler to finish the game off
 				SimpleSpleef.getGameHandler().gameOver(game);
 			}
@@ -0,0 +1,254 @@
+/**
+ * 
+ */
+package de.beimax.simplespleef.game.floortracking;
+
+import org.bukkit.World;
+
+import de.beimax.simplespleef.util.PackedBlock;
+
+/**
+ * @author mkalus
+ * Block changes collected by the floor tracker during a tick and delivered to the floor workers at once.
+ * Changes are kept in primitive arrays; before delivering them to a worker, the tracker selects the changes
+ * within the worker's area, so workers only see changes they are interested in.
+ */
+public class BlockChangeBatch {
+	/**
+	 * world of changes
+	 */
+	private World[] worlds = new World[64];
+
+	/**
+	 * positions of changes
+	 */
+	private int[] xs = new int[64];
+	private int[] ys = new int[64];
+	private int[] zs = new int[64];
+
+	/**
+	 * packed type/data after and before the changes
+	 */
+	private int[] newValues = new int[64];
+	private int[] oldValues = new int[64];
+
+	/**
+	 * sequence numbers of changes
+	 */
+	private long[] sequences = new long[64];
+
+	/**
+	 * workers that caused the changes (null for changes by players etc.)
+	 */
+	private FloorWorker[] sources = new FloorWorker[64];
+
+	/**
+	 * number of changes
+	 */
+	private int size = 0;
+
+	/**
+	 * bounding box of all changes: minX, minY, minZ, maxX, maxY, maxZ
+	 */
+	private final int[] bounds = new int[6];
+
+	/**
+	 * indexes of selected changes
+	 */
+	private int[] selection = new int[64];
+
+	/**
+	 * number of selected changes
+	 */
+	private int selected = 0;
+
+	/**
+	 * add change
+	 * @param world
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param newType
+	 * @param newData
+	 * @param oldType
+	 * @param oldData
+	 * @param sequence
+	 * @param source worker that caused the change (may be null)
+	 */
+	public void add(World world, int x, int y, int z, int newType, byte newData, int oldType, byte oldData, long sequence, FloorWorker source) {
+		if (size == xs.length) grow();
+		worlds[size] = world;
+		xs[size] = x;
+		ys[size] = y;
+		zs[size] = z;
+		newValues[size] = PackedBlock.pack(newType, newData);
+		oldValues[size] = PackedBlock.pack(oldType, oldData);
+		sequences[size] = sequence;
+		sources[size] = source;
+		if (size == 0) {
+			bounds[0] = bounds[3] = x;
+			bounds[1] = bounds[4] = y;
+			bounds[2] = bounds[5] = z;
+		} else {
+			if (x < bounds[0]) bounds[0] = x;
+			if (y < bounds[1]) bounds[1] = y;
+			if (z < bounds[2]) bounds[2] = z;
+			if (x > bounds[3]) bounds[3] = x;
+			if (y > bounds[4]) bounds[4] = y;
+			if (z > bounds[5]) bounds[5] = z;
+		}
+		size++;
+	}
+
+	/**
+	 * @return true, if no changes have been added
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * remove all changes
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++) { // release references
+			worlds[i] = null;
+			sources[i] = null;
+		}
+		size = 0;
+		selected = 0;
+	}
+
+	/**
+	 * select changes for a worker
+	 * @param world world of area (null selects all worlds)
+	 * @param area bounds of area: minX, minY, minZ, maxX, maxY, maxZ (null selects everything)
+	 * @param exclude changes caused by this worker are not selected (may be null)
+	 * @return number of selected changes
+	 */
+	public int select(World world, int[] area, FloorWorker exclude) {
+		selected = 0;
+		// area does not touch changes at all?
+		if (area != null && (area[0] > bounds[3] || area[3] < bounds[0] || area[1] > bounds[4] || area[4] < bounds[1] || area[2] > bounds[5] || area[5] < bounds[2]))
+			return 0;
+		if (selection.length < size) selection = new int[xs.length];
+		for (int i = 0; i < size; i++) {
+			if (exclude != null && sources[i] == exclude) continue;
+			if (world != null && worlds[i] != world) continue;
+			if (area != null && (xs[i] < area[0] || xs[i] > area[3] || ys[i] < area[1] || ys[i] > area[4] || zs[i] < area[2] || zs[i] > area[5])) continue;
+			selection[selected++] = i;
+		}
+		return selected;
+	}
+
+	/**
+	 * @return number of selected changes
+	 */
+	public int size() {
+		return selected;
+	}
+
+	/**
+	 * @param i index of selected change
+	 * @return world of change
+	 */
+	public World getWorld(int i) {
+		return worlds[selection[i]];
+	}
+
+	/**
+	 * @param i index of selected change
+	 * @return x coordinate
+	 */
+	public int getX(int i) {
+		return xs[selection[i]];
+	}
+
+	/**
+	 * @param i index of selected change
+	 * @return y coordinate
+	 */
+	public int getY(int i) {
+		return ys[selection[i]];
+	}
+
+	/**
+	 * @param i index of selected change
+	 * @return z coordinate
+	 */
+	public int getZ(int i) {
+		return zs[selection[i]];
+	}
+
+	/**
+	 * @param i index of selected change
+	 * @return type after change
+	 */
+	public int getTypeId(int i) {
+		return PackedBlock.getTypeId(newValues[selection[i]]);
+	}
+
+	/**
+	 * @param i index of selected change
+	 * @return data after change
+	 */
+	public byte getData(int i) {
+		return PackedBlock.getData(newValues[selection[i]]);
+	}
+
+	/**
+	 * @param i index of selected change
+	 * @return type before change
+	 */
+	public int getOldTypeId(int i) {
+		return PackedBlock.getTypeId(oldValues[selection[i]]);
+	}
+
+	/**
+	 * @param i index of selected change
+	 * @return data before change
+	 */
+	public byte getOldData(int i) {
+		return PackedBlock.getData(oldValues[selection[i]]);
+	}
+
+	/**
+	 * @param i index of selected change
+	 * @return sequence number of change - increases with each change recorded
+	 */
+	public long getSequence(int i) {
+		return sequences[selection[i]];
+	}
+
+	/**
+	 * double size of arrays
+	 */
+	private void grow() {
+		int length = xs.length * 2;
+		World[] newWorlds = new World[length];
+		System.arraycopy(worlds, 0, newWorlds, 0, size);
+		worlds = newWorlds;
+		FloorWorker[] newSources = new FloorWorker[length];
+		System.arraycopy(sources, 0, newSources, 0, size);
+		sources = newSources;
+		xs = grow(xs, length);
+		ys = grow(ys, length);
+		zs = grow(zs, length);
+		newValues = grow(newValues, length);
+		oldValues = grow(oldValues, length);
+		long[] newSequences = new long[length];
+		System.arraycopy(sequences, 0, newSequences, 0, size);
+		sequences = newSequences;
+	}
+
+	/**
+	 * @param array
+	 * @param length
+	 * @return copy of array with new length
+	 */
+	private int[] grow(int[] array, int length) {
+		int[] newArray = new int[length];
+		System.arraycopy(array, 0, newArray, 0, size);
+		return newArray;
+	}
+}
@@ -0,0 +1,80 @@
+/**
+ * 
+ */
+package de.beimax.simplespleef.game.floortracking;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import de.beimax.simplespleef.SimpleSpleef;
+import de.beimax.simplespleef.util.Cuboid;
+import de.beimax.simplespleef.util.PackedBlock;
+
+/**
+ * @author mkalus
+ * Precomputes the order in which the floor dissolves. A plan is an array of offsets within the floor cuboid
+ * ((x * sizeY + y) * sizeZ + z), so the dissolve worker only has to advance a cursor each tick.
+ * Patterns:
+ * random - no plan, random blocks dissolve
+ * edge - outer ring first, moving inwards (shrinking arena)
+ * layer - top layer first, moving downwards
+ * spiral - like edge, but each ring dissolves around the arena in order
+ */
+public abstract class DissolvePattern {
+	/**
+	 * create dissolve plan
+	 * @param pattern name of pattern
+	 * @param floor floor cuboid
+	 * @param positions packed positions of blocks to dissolve
+	 * @param random random generator used for ties
+	 * @return plan of offsets or null for random dissolving
+	 */
+	public static int[] createPlan(String pattern, Cuboid floor, long[] positions, Random random) {
+		if (pattern == null || pattern.equalsIgnoreCase("random") || floor == null || positions == null) return null;
+		int type;
+		if (pattern.equalsIgnoreCase("edge")) type = 0;
+		else if (pattern.equalsIgnoreCase("layer")) type = 1;
+		else if (pattern.equalsIgnoreCase("spiral")) type = 2;
+		else {
+			SimpleSpleef.log.warning("[SimpleSpleef] Unknown dissolve pattern " + pattern + " - floor will dissolve randomly.");
+			return null;
+		}
+
+		int[] coords = floor.getCoords();
+		int sizeY = coords[4] - coords[1] + 1;
+		int sizeZ = coords[5] - coords[2] + 1;
+		double centerX = (coords[0] + coords[3]) / 2.0;
+		double centerZ = (coords[2] + coords[5]) / 2.0;
+
+		// sort keys: order (upper 32 bits) and offset (lower 32 bits)
+		long[] keys = new long[positions.length];
+		int size = 0;
+		for (long position : positions) {
+			int x = PackedBlock.getX(position), y = PackedBlock.getY(position), z = PackedBlock.getZ(position);
+			if (x < coords[0] || y < coords[1] || z < coords[2] || x > coords[3] || y > coords[4] || z > coords[5]) continue;
+
+			// distance to the nearest edge
+			int ring = Math.min(Math.min(x - coords[0], coords[3] - x), Math.min(z - coords[2], coords[5] - z));
+			long order;
+			switch (type) {
+			case 0: // edge: ring, random within ring
+				order = ((long) ring << 16) | random.nextInt(0x10000);
+				break;
+			case 1: // layer: top first, random within layer
+				order = ((long) (coords[4] - y) << 16) | random.nextInt(0x10000);
+				break;
+			default: // spiral: ring, angle around the center within ring
+				double angle = Math.atan2(z - centerZ, x - centerX) + Math.PI; // 0..2*PI
+				order = ((long) ring << 16) | ((long) (angle / (2 * Math.PI) * 0xFFFF) & 0xFFFF);
+			}
+			int offset = ((x - coords[0]) * sizeY + (y - coords[1])) * sizeZ + (z - coords[2]);
+			keys[size++] = (order << 32) | offset;
+		}
+
+		Arrays.sort(keys, 0, size);
+		int[] plan = new int[size];
+		for (int i = 0; i < size; i++)
+			plan[i] = (int) keys[i];
+		return plan;
+	}
+}
@@ -3,11 +3,13 @@
  */
 package de.beimax.simplespleef.game.floortracking;
 
-import java.util.List;
-
+import org.bukkit.World;
 import org.bukkit.block.Block;
 
+import de.beimax.simplespleef.SimpleSpleef;
+import de.beimax.simplespleef.game.BlockMutationQueue;
 import de.beimax.simplespleef.game.Game;
+import de.beimax.simplespleef.util.Cuboid;
 
 /**
  * @author mkalus
@@ -20,9 +22,9 @@ public abstract class FloorBaseWorker implements FloorWorker {
 	private int startAfter;
 	
 	/**
-	 * seconds to wait each tick of the task
+	 * blocks changed per second (fractions allowed)
 	 */
-	private int tickTime;
+	private double rate;
 	
 	/**
 	 * system time to start task at
@@ -30,28 +32,48 @@ public abstract class FloorBaseWorker implements FloorWorker {
 	private long startAt = 0;
 	
 	/**
-	 * system time for next tick
+	 * system time of last tick
+	 */
+	private long lastTick = 0;
+	
+	/**
+	 * blocks due to be changed - fractions are kept for the next ticks
 	 */
-	private long nextTick = 0;
+	private double accumulator = 1.0; // first block is changed right at the start
 	
 	/**
 	 * reference to tracker
 	 */
 	private FloorTracker tracker;
+
+	/**
+	 * game the floor belongs to
+	 */
+	private Game game;
 	
 	/**
 	 * flag to stop task
 	 */
 	protected boolean stop = false;
+
+	/**
+	 * notifies the tracker of written block changes
+	 */
+	private final BlockMutationQueue.MutationListener trackerNotifier = new BlockMutationQueue.MutationListener() {
+		@Override
+		public void blockChanged(Block block, int oldType, byte oldData) {
+			notifyTracker(block, oldType, oldData);
+		}
+	};
 	
 	/**
 	 * Constructor
-	 * @param startAfter
-	 * @param tickTime
+	 * @param startAfter seconds after which the worker starts
+	 * @param rate blocks changed per second
 	 */
-	public FloorBaseWorker(int startAfter, int tickTime, FloorTracker tracker) {
+	public FloorBaseWorker(int startAfter, double rate, FloorTracker tracker) {
 		this.startAfter = startAfter;
-		this.tickTime = tickTime;
+		this.rate = rate;
 		this.tracker = tracker;
 	}
 	
@@ -59,31 +81,54 @@ public abstract class FloorBaseWorker implements FloorWorker {
 	 * initialize task
 	 */
 	@Override
-	public void initialize(Game game, List<Block> floor) {
+	public void initialize(Game game, Cuboid floor) {
+		this.game = game;
 		startAt = System.currentTimeMillis() + ((long) startAfter * 1000);
-		nextTick = startAt;
+		lastTick = startAt;
 	}
 
 	/**
-	 * do a tick
+	 * do a tick - changes as many blocks as are due according to the rate
 	 */
 	@Override
 	public void tick() {
 		long now = System.currentTimeMillis();
-		// first, wait for worker to start and wait for the next tick
-		if (now < startAt || now < nextTick) return;
+		// first, wait for worker to start
+		if (now < startAt) return;
+
+		// add blocks due since last tick - at most one second worth of blocks, so there are no bursts after lags
+		accumulator = Math.min(accumulator + rate * (now - lastTick) / 1000.0, Math.max(1.0, rate));
+		lastTick = now;
 
 		// now do the actual tick work
-		executeTick();
-		// update tick
-		nextTick = nextTick + ((long) tickTime * 1000);
+		while (accumulator >= 1.0) {
+			if (!executeTick()) { // nothing left to do - do not save up blocks for later
+				accumulator = 0.0;
+				break;
+			}
+			accumulator -= 1.0;
+		}
 	}
 	
 	/**
-	 * do a tick within the task
+	 * change a single block
+	 * @return false, if there was no block to change
 	 */
-	public abstract void executeTick();
+	public abstract boolean executeTick();
 	
+	/**
+	 * Change a block - the change is queued and written in the main thread, the tracker is notified afterwards
+	 * @param world
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param typeId new type
+	 * @param data new data
+	 */
+	protected void changeBlock(World world, int x, int y, int z, int typeId, byte data) {
+		SimpleSpleef.getBlockMutationQueue().enqueue(game, world, x, y, z, typeId, data, trackerNotifier);
+	}
+
 	/**
 	 * Notify the tracker about a block change - called by tick() when a block changes,
 	 * so other trackers can update this block
@@ -3,15 +3,15 @@
  */
 package de.beimax.simplespleef.game.floortracking;
 
-import java.util.HashSet;
-import java.util.List;
 import java.util.Random;
 
-import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.block.Block;
+import org.bukkit.World;
 
 import de.beimax.simplespleef.game.Game;
+import de.beimax.simplespleef.util.Cuboid;
+import de.beimax.simplespleef.util.IndexedLongSet;
+import de.beimax.simplespleef.util.PackedBlock;
 
 /**
  * @author mkalus
@@ -19,88 +19,151 @@ import de.beimax.simplespleef.game.Game;
  */
 public class FloorDissolveWorker extends FloorBaseWorker {
 	/**
-	 * areas of the floor that are non-air
+	 * areas of the floor that are non-air (packed positions)
 	 */
-	private HashSet<Location> nonAir = new HashSet<Location>();
+	private IndexedLongSet nonAir = new IndexedLongSet();
+
+	/**
+	 * world of floor
+	 */
+	private World world;
+
+	/**
+	 * random generator of this game
+	 */
+	private Random random;
+
+	/**
+	 * name of dissolve pattern
+	 */
+	private final String pattern;
+
+	/**
+	 * precomputed plan of offsets within the floor cuboid - null for random dissolving
+	 */
+	private int[] plan = null;
+
+	/**
+	 * floor to create the plan for - null once the plan has been created
+	 */
+	private Cuboid floor;
+
+	/**
+	 * next entry of the plan
+	 */
+	private int cursor = 0;
+
+	/**
+	 * bounds of the floor cuboid
+	 */
+	private int minX, minY, minZ, sizeY, sizeZ;
 	
 	/**
 	 * Constructor
-	 * @param startAfter
-	 * @param tickTime
+	 * @param startAfter seconds after which the worker starts
+	 * @param rate blocks changed per second
+	 */
+	public FloorDissolveWorker(int startAfter, double rate, FloorTracker tracker) {
+		this(startAfter, rate, "random", tracker);
+	}
+
+	/**
+	 * Constructor
+	 * @param startAfter seconds after which the worker starts
+	 * @param rate blocks changed per second
+	 * @param pattern name of dissolve pattern (see DissolvePattern)
 	 */
-	public FloorDissolveWorker(int startAfter, int tickTime, FloorTracker tracker) {
-		super(startAfter, tickTime, tracker);
+	public FloorDissolveWorker(int startAfter, double rate, String pattern, FloorTracker tracker) {
+		super(startAfter, rate, tracker);
+		this.pattern = pattern;
 	}
 
 	/* (non-Javadoc)
-	 * @see de.beimax.simplespleef.game.floortracking.FloorWorker#initialize(de.beimax.simplespleef.game.Game, java.util.List)
+	 * @see de.beimax.simplespleef.game.floortracking.FloorWorker#initialize(de.beimax.simplespleef.game.Game, de.beimax.simplespleef.util.Cuboid)
 	 */
 	@Override
-	public void initialize(Game game, List<Block> floor) {
+	public void initialize(Game game, Cuboid floor) {
 		if (floor == null) {
 			stop = true;
 			return; // ignore null floors
 		}
 
 		super.initialize(game, floor);
-		for (Block block : floor) {
-			if (block == null) continue; // no NPEs
-			if (block.getType() != Material.AIR) // add location to nonAir locations
-				nonAir.add(block.getLocation());
-		}
+		random = new Random(game.getId().hashCode() ^ System.nanoTime());
+		world = floor.getWorld();
+		int[] coords = floor.getCoords();
+		minX = coords[0];
+		minY = coords[1];
+		minZ = coords[2];
+		sizeY = coords[4] - coords[1] + 1;
+		sizeZ = coords[5] - coords[2] + 1;
+		this.floor = floor;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.game.floortracking.FloorWorker#initializeBlock(int, int, int, int, byte)
+	 */
+	@Override
+	public void initializeBlock(int x, int y, int z, int typeId, byte data) {
+		if (stop) return;
+		if (typeId != Material.AIR.getId()) // add location to nonAir locations
+			nonAir.add(PackedBlock.packPosition(x, y, z));
+	}
+
+	/**
+	 * precompute order of dissolving - called once, after all blocks of the floor have been initialized
+	 */
+	public void createPlan() {
+		if (stop || floor == null) return;
+		plan = DissolvePattern.createPlan(pattern, floor, nonAir.toArray(), random);
+		floor = null;
 	}
 
 	/* (non-Javadoc)
-	 * @see de.beimax.simplespleef.game.floortracking.FloorWorker#updateBlock(org.bukkit.block.Block)
+	 * @see de.beimax.simplespleef.game.floortracking.FloorWorker#updateBlocks(de.beimax.simplespleef.game.floortracking.BlockChangeBatch)
 	 */
 	@Override
-	public void updateBlock(Block block, int oldType, byte oldData) {
-		if (block == null) return; // no NPEs
+	public void updateBlocks(BlockChangeBatch changes) {
 		if (stop) return;
 
-		Location loc = block.getLocation();
-		if (nonAir.contains(loc)) {
-			if (block.getType() == Material.AIR) // dissolve to air
+		for (int i = 0; i < changes.size(); i++) {
+			long loc = PackedBlock.packPosition(changes.getX(i), changes.getY(i), changes.getZ(i));
+			if (changes.getTypeId(i) == Material.AIR.getId()) // dissolved to air
 				nonAir.remove(loc); // remove because it is air anyway
-		} else if (block.getType() != Material.AIR) // non air added - add to dissolveable parts of arena
-			nonAir.add(loc);			
+			else // non air added - add to dissolveable parts of arena
+				nonAir.add(loc);
+		}
 	}
 
 	/* (non-Javadoc)
 	 * @see de.beimax.simplespleef.game.floortracking.FloorBaseWorker#executeTick()
 	 */
 	@Override
-	public void executeTick() {
+	public boolean executeTick() {
 		// get a random entry
-		Location location = getRandomEntry();
-		if (location != null) {
-			Block block = location.getBlock();
-			// get old data
-			int oldType = block.getTypeId();
-			byte oldData = block.getData();
-			// dissolve to air
-			block.setType(Material.AIR);
-			block.setData((byte) 0);
-			nonAir.remove(location);				
-			// notify others
-			notifyTracker(block, oldType, oldData);
-		}
+		if (nonAir.isEmpty()) return false; // if all locations have been dissolved
+		long location = nextPlanned();
+		if (location == Long.MIN_VALUE) // no plan or plan finished - blocks placed later dissolve randomly
+			location = nonAir.getRandom(random);
+		// dissolve to air - others are notified when the block has been changed
+		changeBlock(world, PackedBlock.getX(location), PackedBlock.getY(location), PackedBlock.getZ(location), Material.AIR.getId(), (byte) 0);
+		nonAir.remove(location);
+		return true;
 	}
 	
 	/**
-	 * picks a random entry from non-air set
-	 */
-	private Location getRandomEntry() {
-		int size = nonAir.size();
-		if (size == 0) return null;
-		int item = new Random().nextInt(size);
-		int i = 0;
-		for(Location location : nonAir) {
-			if (i == item) return location;
-			i++;
+	 * advance plan to the next block that is not air
+	 * @return packed position or Long.MIN_VALUE, if there is no plan or it has been finished
+	 */
+	private long nextPlanned() {
+		if (plan == null) return Long.MIN_VALUE;
+		while (cursor < plan.length) {
+			int offset = plan[cursor++];
+			long location = PackedBlock.packPosition(minX + offset / sizeZ / sizeY, minY + (offset / sizeZ) % sizeY, minZ + offset % sizeZ);
+			if (nonAir.contains(location)) return location; // skip blocks that are air already
 		}
-		
-		return null; // if all locations have been dissolved
+		plan = null; // finished
+		return Long.MIN_VALUE;
 	}
 
 	@Override
@@ -3,17 +3,15 @@
  */
 package de.beimax.simplespleef.game.floortracking;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Random;
 
-import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.block.Block;
+import org.bukkit.World;
 
 import de.beimax.simplespleef.game.Game;
-import de.beimax.simplespleef.util.SerializableBlockData;
+import de.beimax.simplespleef.util.Cuboid;
+import de.beimax.simplespleef.util.IndexedLongSet;
+import de.beimax.simplespleef.util.PackedBlock;
 
 /**
  * @author mkalus
@@ -21,96 +19,121 @@ import de.beimax.simplespleef.util.SerializableBlockData;
  */
 public class FloorRepairWorker extends FloorBaseWorker {
 	/**
-	 * keeps the data of the original blocks
+	 * keeps the data of the original blocks (packed type/data, 0 for blocks not tracked), indexed by offset within the floor cuboid
 	 */
-	private HashMap<Location, SerializableBlockData> originalBlocks = new HashMap<Location, SerializableBlockData>();
+	private int[] originalBlocks;
+
+	/**
+	 * bounds of the floor cuboid
+	 */
+	private int minX, minY, minZ, sizeX, sizeY, sizeZ;
 	
 	/**
-	 * areas of the floor that are air (changed areas)
+	 * areas of the floor that are air (changed areas, offsets within the floor cuboid)
+	 */
+	private IndexedLongSet air = new IndexedLongSet();
+
+	/**
+	 * world of floor
 	 */
-	private HashSet<Location> air = new HashSet<Location>();
+	private World world;
+
+	/**
+	 * random generator of this game
+	 */
+	private Random random;
 	
 	/**
 	 * Constructor
-	 * @param startAfter
-	 * @param tickTime
+	 * @param startAfter seconds after which the worker starts
+	 * @param rate blocks changed per second
 	 */
-	public FloorRepairWorker(int startAfter, int tickTime, FloorTracker tracker) {
-		super(startAfter, tickTime, tracker);
+	public FloorRepairWorker(int startAfter, double rate, FloorTracker tracker) {
+		super(startAfter, rate, tracker);
 	}
 
 	/* (non-Javadoc)
-	 * @see de.beimax.simplespleef.game.floortracking.FloorWorker#initialize(de.beimax.simplespleef.game.Game, java.util.List)
+	 * @see de.beimax.simplespleef.game.floortracking.FloorWorker#initialize(de.beimax.simplespleef.game.Game, de.beimax.simplespleef.util.Cuboid)
 	 */
 	@Override
-	public void initialize(Game game, List<Block> floor) {
+	public void initialize(Game game, Cuboid floor) {
 		if (floor == null) {
 			stop = true;
 			return; // ignore null floors
 		}
 
 		super.initialize(game, floor);
-		//TODO: do we really need an original block memory or can we do something like in the SoftRestorer?
-		for (Block block : floor) {
-			if (block == null) continue; // no NPEs
-			if (block.getType() != Material.AIR) // add location to original locations
-				originalBlocks.put(block.getLocation(), new SerializableBlockData(block.getTypeId(), block.getData()));
-		}
+		random = new Random(game.getId().hashCode() ^ System.nanoTime());
+		world = floor.getWorld();
+		int[] coords = floor.getCoords();
+		minX = coords[0];
+		minY = coords[1];
+		minZ = coords[2];
+		sizeX = coords[3] - coords[0] + 1;
+		sizeY = coords[4] - coords[1] + 1;
+		sizeZ = coords[5] - coords[2] + 1;
+		originalBlocks = new int[sizeX * sizeY * sizeZ];
 	}
 
 	/* (non-Javadoc)
-	 * @see de.beimax.simplespleef.game.floortracking.FloorWorker#updateBlock(org.bukkit.block.Block)
+	 * @see de.beimax.simplespleef.game.floortracking.FloorWorker#initializeBlock(int, int, int, int, byte)
 	 */
 	@Override
-	public void updateBlock(Block block, int oldType, byte oldData) {
-		if (block == null) return; // no NPEs
+	public void initializeBlock(int x, int y, int z, int typeId, byte data) {
 		if (stop) return;
+		int index = getIndex(x, y, z);
+		if (index >= 0 && typeId != Material.AIR.getId()) // add location to original locations - non-air is never 0
+			originalBlocks[index] = PackedBlock.pack(typeId, data);
+	}
 
-		Location loc = block.getLocation();
-		if (originalBlocks.containsKey(loc)) { // only locations that are contained in the original block database
-			if (block.getType() == Material.AIR) // dissolved to air?
-				air.add(loc); //add location to repair it later on
-			else air.remove(loc); // if not dissolved, remove from repair list to prevent repairs
-		}			
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.game.floortracking.FloorWorker#updateBlocks(de.beimax.simplespleef.game.floortracking.BlockChangeBatch)
+	 */
+	@Override
+	public void updateBlocks(BlockChangeBatch changes) {
+		if (stop) return;
+
+		for (int i = 0; i < changes.size(); i++) {
+			int index = getIndex(changes.getX(i), changes.getY(i), changes.getZ(i));
+			if (index >= 0 && originalBlocks[index] != 0) { // only locations that are contained in the original block database
+				if (changes.getTypeId(i) == Material.AIR.getId()) // dissolved to air?
+					air.add(index); //add location to repair it later on
+				else air.remove(index); // if not dissolved, remove from repair list to prevent repairs
+			}
+		}
 	}
 
 	/* (non-Javadoc)
 	 * @see de.beimax.simplespleef.game.floortracking.FloorBaseWorker#executeTick()
 	 */
 	@Override
-	public void executeTick() {
+	public boolean executeTick() {
 		// get a random entry
-		Location location = getRandomEntry();
-		if (location != null) {
-			SerializableBlockData blockData = originalBlocks.get(location); // get original block data
-			if (blockData == null) return; // no NPEs, should not happen here, but just to make sure...
-			// repair it
-			Block block = location.getBlock();
-			// get old data
-			int oldType = block.getTypeId();
-			byte oldData = block.getData();
-			block.setTypeId(blockData.getTypeId());
-			block.setData(blockData.getData());
-			air.remove(location);				
-			// notify others
-			notifyTracker(block, oldType, oldData);
-		}
+		if (air.isEmpty()) return false; // if all locations have been repaired
+		int index = (int) air.getRandom(random);
+		int original = originalBlocks[index]; // get original block data
+		// repair it
+		int z = index % sizeZ;
+		int y = (index / sizeZ) % sizeY;
+		int x = index / sizeZ / sizeY;
+		// others are notified when the block has been changed
+		changeBlock(world, minX + x, minY + y, minZ + z, PackedBlock.getTypeId(original), PackedBlock.getData(original));
+		air.remove(index);
+		return true;
 	}
 
 	/**
-	 * picks a random entry from air set
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return offset of block within the floor cuboid or -1, if it is outside
 	 */
-	private Location getRandomEntry() {
-		int size = air.size();
-		if (size == 0) return null;
-		int item = new Random().nextInt(size);
-		int i = 0;
-		for(Location location : air) {
-			if (i == item) return location;
-			i++;
-		}
-		
-		return null; // if all locations have been dissolved
+	private int getIndex(int x, int y, int z) {
+		x -= minX;
+		y -= minY;
+		z -= minZ;
+		if (x < 0 || y < 0 || z < 0 || x >= sizeX || y >= sizeY || z >= sizeZ) return -1;
+		return (x * sizeY + y) * sizeZ + z;
 	}
 
 	@Override
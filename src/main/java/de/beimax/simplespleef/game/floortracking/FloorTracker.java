@@ -6,12 +6,14 @@ package de.beimax.simplespleef.game.floortracking;
 
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.bukkit.World;
 import org.bukkit.block.Block;
 
 import de.beimax.simplespleef.SimpleSpleef;
 import de.beimax.simplespleef.game.Game;
+import de.beimax.simplespleef.util.BlockVisitor;
 import de.beimax.simplespleef.util.Cuboid;
 
 /**
@@ -25,25 +27,35 @@ public class FloorTracker implements Runnable {
 	private int arenaFloorDissolvesAfter = -1;
 	
 	/**
-	 * Time in seconds for new blocks to dissolve into thin air
+	 * Blocks per second dissolving into thin air (fractions allowed)
 	 */
-	private int arenaFloorDissolveTick = 5;
+	private double arenaFloorDissolveRate = 0.2;
 	
+	/**
+	 * Order in which the floor dissolves (random, edge, layer, spiral)
+	 */
+	private String arenaFloorDissolvePattern = "random";
+
 	/**
 	 * Time in seconds, after which the arena floor starts to repair slowly (-1 disables this)
 	 */
 	private int arenaFloorRepairsAfter = -1;
 	
 	/**
-	 * Time in seconds for new blocks to get repaired
+	 * Blocks per second getting repaired (fractions allowed)
 	 */
-	private int arenaFloorRepairTick = 10;
+	private double arenaFloorRepairRate = 0.1;
 	
 	/**
 	 * flag to stop worker
 	 */
 	private boolean stop = false;
 	
+	/**
+	 * game tracked
+	 */
+	private Game game;
+
 	/**
 	 * id of the Bukkit scheduler for the tracker
 	 */
@@ -52,7 +64,17 @@ public class FloorTracker implements Runnable {
 	/**
 	 * list of floor workers to be called
 	 */
-	LinkedList<FloorWorker> floorWorkers = new LinkedList<FloorWorker>();
+	LinkedList<Registration> floorWorkers = new LinkedList<Registration>();
+
+	/**
+	 * changes collected since the last tick
+	 */
+	private final BlockChangeBatch changes = new BlockChangeBatch();
+
+	/**
+	 * sequence number of the last change recorded (by any tracker)
+	 */
+	private static final AtomicLong lastSequence = new AtomicLong();
 	
 	/**
 	 * @return the arenaFloorDissolvesAfter
@@ -69,17 +91,31 @@ public class FloorTracker implements Runnable {
 	}
 
 	/**
-	 * @return the arenaFloorDissolveTick
+	 * @return the arenaFloorDissolveRate
 	 */
-	public int getArenaFloorDissolveTick() {
-		return arenaFloorDissolveTick;
+	public double getArenaFloorDissolveRate() {
+		return arenaFloorDissolveRate;
 	}
 
 	/**
-	 * @param arenaFloorDissolveTick the arenaFloorDissolveTick to set
+	 * @param arenaFloorDissolveRate the arenaFloorDissolveRate to set
 	 */
-	public void setArenaFloorDissolveTick(int arenaFloorDissolveTick) {
-		this.arenaFloorDissolveTick = arenaFloorDissolveTick;
+	public void setArenaFloorDissolveRate(double arenaFloorDissolveRate) {
+		this.arenaFloorDissolveRate = arenaFloorDissolveRate;
+	}
+
+	/**
+	 * @return the arenaFloorDissolvePattern
+	 */
+	public String getArenaFloorDissolvePattern() {
+		return arenaFloorDissolvePattern;
+	}
+
+	/**
+	 * @param arenaFloorDissolvePattern the arenaFloorDissolvePattern to set
+	 */
+	public void setArenaFloorDissolvePattern(String arenaFloorDissolvePattern) {
+		this.arenaFloorDissolvePattern = arenaFloorDissolvePattern;
 	}
 
 	/**
@@ -97,17 +133,17 @@ public class FloorTracker implements Runnable {
 	}
 
 	/**
-	 * @return the arenaFloorRepairTick
+	 * @return the arenaFloorRepairRate
 	 */
-	public int getArenaFloorRepairTick() {
-		return arenaFloorRepairTick;
+	public double getArenaFloorRepairRate() {
+		return arenaFloorRepairRate;
 	}
 
 	/**
-	 * @param arenaFloorRepairTick the arenaFloorRepairTick to set
+	 * @param arenaFloorRepairRate the arenaFloorRepairRate to set
 	 */
-	public void setArenaFloorRepairTick(int arenaFloorRepairTick) {
-		this.arenaFloorRepairTick = arenaFloorRepairTick;
+	public void setArenaFloorRepairRate(double arenaFloorRepairRate) {
+		this.arenaFloorRepairRate = arenaFloorRepairRate;
 	}
 
 	/**
@@ -115,46 +151,60 @@ public class FloorTracker implements Runnable {
 	 * @param game
 	 * @param floor
 	 */
-	public void startTracking(Game game, Cuboid floor) {
-		//initialize floor dissolve task
+	public synchronized void startTracking(Game game, Cuboid floor) {
+		this.game = game;
+
+		//initialize floor dissolve task - new blocks dissolve everywhere, so it gets all changes
+		FloorDissolveWorker dissolveWorker = null;
 		if (arenaFloorDissolvesAfter >= 0) {
-			floorWorkers.add(new FloorDissolveWorker(arenaFloorDissolvesAfter, arenaFloorDissolveTick, this));
+			dissolveWorker = new FloorDissolveWorker(arenaFloorDissolvesAfter, arenaFloorDissolveRate, arenaFloorDissolvePattern, this);
+			floorWorkers.add(new Registration(dissolveWorker, null));
 		}
 
-		//initialize floor repair task
+		//initialize floor repair task - only repairs the floor
 		if (arenaFloorRepairsAfter >= 0) {
-			floorWorkers.add(new FloorRepairWorker(arenaFloorRepairsAfter, arenaFloorRepairTick, this));
+			floorWorkers.add(new Registration(new FloorRepairWorker(arenaFloorRepairsAfter, arenaFloorRepairRate, this), floor));
 		}
 
-		// get diggable floor
-		List<Block> blocks;
-		if (floor != null) blocks = floor.getDiggableBlocks(game);
-		else blocks = null; // this will stop some of the trackers right away
-		
-		// initialize tasks one by one
-		for (FloorWorker floorWorker : floorWorkers) {
-			floorWorker.initialize(game, blocks);
+		// initialize tasks one by one - a null floor will stop some of the trackers right away
+		for (Registration registration : floorWorkers) {
+			registration.worker.initialize(game, floor);
 		}
+
+		// pass diggable floor to all tasks in a single pass
+		if (floor != null) floor.visitDiggableBlocks(game, new BlockVisitor() {
+			@Override
+			public void visit(int x, int y, int z, int typeId, byte data) {
+				for (Registration registration : floorWorkers) {
+					registration.worker.initializeBlock(x, y, z, typeId, data);
+				}
+			}
+		});
+
+		// precompute dissolve order now, so the workers' ticks stay cheap
+		if (dissolveWorker != null) dissolveWorker.createPlan();
 		
-		// start tracking
-		schedulerId = SimpleSpleef.getPlugin().getServer().getScheduler().scheduleAsyncRepeatingTask(SimpleSpleef.getPlugin(), this, 0L, 20L);
+		// start tracking - every tick, so workers can spread their changes evenly
+		schedulerId = SimpleSpleef.getPlugin().getServer().getScheduler().scheduleAsyncRepeatingTask(SimpleSpleef.getPlugin(), this, 0L, 1L);
 	}
 	
 	@Override
-	public void run() {
+	public synchronized void run() {
 		// not stopped: normal operations
 		if (!stop) {
+			// deliver changes of last tick
+			deliverChanges();
 			// actual worker task: execute ticks for all workers
-			for (FloorWorker floorWorker : floorWorkers) {
-				floorWorker.tick();
+			for (Registration registration : floorWorkers) {
+				registration.worker.tick();
 			}
 		}
 
 		//wait for floor workers to be stopped
-		Iterator<FloorWorker> i = floorWorkers.iterator(); //use iterator, because one can remove while traversing...
+		Iterator<Registration> i = floorWorkers.iterator(); //use iterator, because one can remove while traversing...
 		while (i.hasNext()) {
-			FloorWorker floorWorker = i.next();
-			if (floorWorker.isStopped()) i.remove();
+			Registration registration = i.next();
+			if (registration.worker.isStopped()) i.remove();
 		}
 		
 		// is our list empty? If yes, cancel scheduler
@@ -164,49 +214,107 @@ public class FloorTracker implements Runnable {
 	}
 	
 	/**
-	 * stop tracking floor changes
+	 * stop tracking floor changes - to be called in the main thread
 	 */
-	public void stopTracking() {
+	public synchronized void stopTracking() {
+		if (!stop) {
+			// write block changes still queued by the workers, so they are tracked before the arena is restored
+			if (game != null) SimpleSpleef.getBlockMutationQueue().flush(game);
+			// workers should know about all changes before they stop
+			deliverChanges();
+		}
 		stop = true;
 		// stop tracking for all floors workers
-		for (FloorWorker floorWorker : floorWorkers) {
-			floorWorker.stopTracking();
+		for (Registration registration : floorWorkers) {
+			registration.worker.stopTracking();
 		}
 	}
 	
 	/**
-	 * update a certain block location
+	 * update a certain block location - the block has been changed already
 	 * @param block
 	 * @param oldType - old type of block
 	 * @param oldData - old data of block
 	 */
 	public void updateBlock(Block block, int oldType, byte oldData) {
-		if (!stop) // if stopped, do not update changes any more
-			for (FloorWorker floorWorker : floorWorkers) {
-				floorWorker.updateBlock(block, oldType, oldData);
-			}
+		updateBlock(block, block.getTypeId(), block.getData(), oldType, oldData);
+	}
+
+	/**
+	 * update a certain block location - to be called in the main thread
+	 * @param block
+	 * @param newType - new type of block
+	 * @param newData - new data of block
+	 * @param oldType - old type of block
+	 * @param oldData - old data of block
+	 */
+	public synchronized void updateBlock(Block block, int newType, byte newData, int oldType, byte oldData) {
+		changes.add(block.getWorld(), block.getX(), block.getY(), block.getZ(), newType, newData, oldType, oldData, lastSequence.incrementAndGet(), null);
+		if (stop) deliverChanges(); // late change - workers left (restorers) get it right away
 	}
 	
 	/**
-	 * Called by tick()-methods of FloorWorkers when they change a block,
+	 * Called in the main thread when a block change of a FloorWorker has been written,
 	 * so other trackers can update their block database. 
 	 * @param block
 	 * @param oldType - old type of block
 	 * @param oldData - old data of block
 	 * @param caller
 	 */
-	public void notifyChangedBlock(Block block, int oldType, byte oldData, FloorWorker caller) {
-		for (FloorWorker floorWorker : floorWorkers) {
-			if (floorWorker != caller) // caller is not updated - has to do this itself
-				floorWorker.updateBlock(block, oldType, oldData);
-		}
+	public synchronized void notifyChangedBlock(Block block, int oldType, byte oldData, FloorWorker caller) {
+		// caller is not updated - has to do this itself
+		changes.add(block.getWorld(), block.getX(), block.getY(), block.getZ(), block.getTypeId(), block.getData(), oldType, oldData, lastSequence.incrementAndGet(), caller);
+		if (stop) deliverChanges(); // late change - workers left (restorers) get it right away
 	}
 	
 	/**
-	 * Add a new floor worker to tracker
+	 * Add a new floor worker to tracker - it gets all changes
 	 * @param worker
 	 */
 	public void addFloorWorker(FloorWorker worker) {
-		floorWorkers.add(worker);
+		addFloorWorker(worker, null);
+	}
+
+	/**
+	 * Add a new floor worker to tracker
+	 * @param worker
+	 * @param area worker only gets changes within this area (null for all changes)
+	 */
+	public synchronized void addFloorWorker(FloorWorker worker, Cuboid area) {
+		floorWorkers.add(new Registration(worker, area));
+	}
+
+	/**
+	 * @return sequence number of the last change recorded - changes recorded later have higher numbers
+	 */
+	public static long getLastSequence() {
+		return lastSequence.get();
+	}
+
+	/**
+	 * deliver collected changes to the workers interested in them
+	 */
+	private void deliverChanges() {
+		if (changes.isEmpty()) return;
+		for (Registration registration : floorWorkers) {
+			if (changes.select(registration.world, registration.area, registration.worker) > 0)
+				registration.worker.updateBlocks(changes);
+		}
+		changes.clear();
+	}
+
+	/**
+	 * floor worker and the area it is interested in
+	 */
+	private static class Registration {
+		private final FloorWorker worker;
+		private final World world;
+		private final int[] area;
+
+		public Registration(FloorWorker worker, Cuboid area) {
+			this.worker = worker;
+			this.world = area == null ? null : area.getWorld();
+			this.area = area == null ? null : area.getCoords();
+		}
 	}
 }
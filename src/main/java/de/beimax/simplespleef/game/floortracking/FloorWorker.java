@@ -3,11 +3,8 @@
  */
 package de.beimax.simplespleef.game.floortracking;
 
-import java.util.List;
-
-import org.bukkit.block.Block;
-
 import de.beimax.simplespleef.game.Game;
+import de.beimax.simplespleef.util.Cuboid;
 
 /**
  * @author mkalus
@@ -15,11 +12,21 @@ import de.beimax.simplespleef.game.Game;
  */
 public interface FloorWorker {
 	/**
-	 * Initialize the tracker
+	 * Initialize the tracker - initializeBlock is called for each diggable block of the floor afterwards
 	 * @param game
-	 * @param floor
+	 * @param floor cuboid of floor (may be null)
+	 */
+	public void initialize(Game game, Cuboid floor);
+
+	/**
+	 * Initialize a diggable block of the floor - called chunk by chunk
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param typeId
+	 * @param data
 	 */
-	public void initialize(Game game, List<Block> floor);
+	public void initializeBlock(int x, int y, int z, int typeId, byte data);
 	
 	/**
 	 * do an action tick, possible do floor change or the like here
@@ -32,12 +39,10 @@ public interface FloorWorker {
 	public void stopTracking();
 	
 	/**
-	 * update a certain block location
-	 * @param block - new block data
-	 * @param oldType - old type of block
-	 * @param oldData - old data of block
+	 * update block changes of the last tick - only changes within the area the worker has been registered for
+	 * @param changes selected changes
 	 */
-	public void updateBlock(Block block, int oldType, byte oldData);
+	public void updateBlocks(BlockChangeBatch changes);
 	
 	/**
 	 * returns true if tracker has been stopped
@@ -0,0 +1,43 @@
+/**
+ * This file is part of the SimpleSpleef bukkit plugin.
+ * Copyright (C) 2011 Maximilian Kalus
+ * See http://dev.bukkit.org/server-mods/simple-spleef/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package de.beimax.simplespleef.listeners;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+import de.beimax.simplespleef.SimpleSpleef;
+
+/**
+ * Handle world events
+ * @author mkalus
+ *
+ */
+public class SimpleSpleefWorldListener implements Listener {
+	/**
+	 * keep chunks of running games loaded
+	 * @param event
+	 */
+	@EventHandler
+	public void onChunkUnload(ChunkUnloadEvent event) {
+		if (event.isCancelled() || SimpleSpleef.getGameHandler() == null) return;
+		if (SimpleSpleef.getGameHandler().getChunkRetention().isRetained(event.getWorld(), event.getChunk().getX(), event.getChunk().getZ()))
+			event.setCancelled(true);
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * This file is part of the SimpleSpleef bukkit plugin.
+ * Copyright (C) 2011 Maximilian Kalus
+ * See http://dev.bukkit.org/server-mods/simple-spleef/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package de.beimax.simplespleef.util;
+
+import org.bukkit.block.Block;
+
+/**
+ * @author mkalus
+ * Immutable matcher of block types compiled from a list of materials (see MaterialHelper.compileMatcher):
+ * a table indexed by type id holds a bit mask of the data values matching (all bits set for "any" data).
+ */
+public class BlockMatcher {
+	/**
+	 * mask matching any data value
+	 */
+	public static final char ANY_DATA = 0xFFFF;
+
+	/**
+	 * matcher without any entries
+	 */
+	public static final BlockMatcher EMPTY = new BlockMatcher(new char[0]);
+
+	/**
+	 * data masks indexed by type id
+	 */
+	private final char[] masks;
+
+	/**
+	 * true, if no block matches
+	 */
+	private final boolean empty;
+
+	/**
+	 * Constructor
+	 * @param masks data masks indexed by type id - not copied, must not be changed afterwards
+	 */
+	protected BlockMatcher(char[] masks) {
+		this.masks = masks;
+		boolean empty = true;
+		for (char mask : masks)
+			if (mask != 0) {
+				empty = false;
+				break;
+			}
+		this.empty = empty;
+	}
+
+	/**
+	 * @param typeId
+	 * @param data
+	 * @return true, if type and data match one of the entries
+	 */
+	public boolean matches(int typeId, byte data) {
+		if (typeId < 0 || typeId >= masks.length) return false;
+		char mask = masks[typeId];
+		if (data < 0 || data > 15) return mask == ANY_DATA;
+		return (mask & (1 << data)) != 0;
+	}
+
+	/**
+	 * @param block
+	 * @return true, if the block matches one of the entries
+	 */
+	public boolean matches(Block block) {
+		if (block == null) return false; // no NPEs
+		return matches(block.getTypeId(), block.getData());
+	}
+
+	/**
+	 * @return true, if no block matches
+	 */
+	public boolean isEmpty() {
+		return empty;
+	}
+}
@@ -0,0 +1,35 @@
+/**
+ * This file is part of the SimpleSpleef bukkit plugin.
+ * Copyright (C) 2011 Maximilian Kalus
+ * See http://dev.bukkit.org/server-mods/simple-spleef/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package de.beimax.simplespleef.util;
+
+/**
+ * @author mkalus
+ * Visitor of blocks within a cuboid - gets primitive coordinates and block values instead of Block objects
+ */
+public interface BlockVisitor {
+	/**
+	 * visit a block
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param typeId
+	 * @param data
+	 */
+	public void visit(int x, int y, int z, int typeId, byte data);
+}
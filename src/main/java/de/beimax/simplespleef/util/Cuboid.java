@@ -18,10 +18,8 @@
  **/
 package de.beimax.simplespleef.util;
 
-import java.util.List;
-
 import org.bukkit.Location;
-import org.bukkit.block.Block;
+import org.bukkit.World;
 
 import de.beimax.simplespleef.game.Game;
 
@@ -36,6 +34,38 @@ public interface Cuboid {
 	 * @return
 	 */
 	public boolean contains(Location location);
+
+	/**
+	 * checks whether block coordinates are within this cuboid (world is not checked)
+	 * 
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return
+	 */
+	public boolean contains(int x, int y, int z);
+
+	/**
+	 * get world of the cuboid
+	 * @return
+	 */
+	public World getWorld();
+
+	/**
+	 * get bounding box of the cuboid
+	 * @return int[]{minX, minY, minZ, maxX, maxY, maxZ}
+	 */
+	public int[] getCoords();
+
+	/**
+	 * @return true, if the cuboid fills its bounding box completely
+	 */
+	public boolean isRectangular();
+
+	/**
+	 * @return definition of the cuboid (world, bounds and shape) - changes when the cuboid is redefined
+	 */
+	public String getDefinition();
 	
 	/**
 	 * return array of serializable blocks
@@ -51,9 +81,9 @@ public interface Cuboid {
 	public void setSerializedBlocks(SerializableBlockData[][][] blockData);
 	
 	/**
-	 * retrieve a list of blocks from the cuboid that can be dug by a particular game
+	 * visit the blocks of the cuboid that can be dug by a particular game, chunk by chunk
 	 * @param game
-	 * @return
+	 * @param visitor
 	 */
-	public List<Block> getDiggableBlocks(Game game);
+	public void visitDiggableBlocks(Game game, BlockVisitor visitor);
 }
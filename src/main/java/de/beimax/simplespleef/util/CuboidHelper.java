@@ -0,0 +1,60 @@
+/**
+ * This file is part of the SimpleSpleef bukkit plugin.
+ * Copyright (C) 2011 Maximilian Kalus
+ * See http://dev.bukkit.org/server-mods/simple-spleef/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package de.beimax.simplespleef.util;
+
+import org.bukkit.Chunk;
+import org.bukkit.World;
+
+import de.beimax.simplespleef.game.Game;
+
+/**
+ * @author mkalus
+ * Helpers shared by the cuboid implementations
+ */
+abstract class CuboidHelper {
+	/**
+	 * visit blocks of a cuboid that can be dug by a game - chunk by chunk: each chunk is resolved once, types are
+	 * read from the world directly and data only for non-air blocks through the chunk, so no chunk copies are made.
+	 * Has to be called in the main thread.
+	 * @param cuboid
+	 * @param game
+	 * @param visitor
+	 */
+	static void visitDiggableBlocks(Cuboid cuboid, Game game, BlockVisitor visitor) {
+		World world = cuboid.getWorld();
+		int[] coords = cuboid.getCoords();
+		for (int chunkX = coords[0] >> 4; chunkX <= coords[3] >> 4; chunkX++)
+			for (int chunkZ = coords[2] >> 4; chunkZ <= coords[5] >> 4; chunkZ++) {
+				if (!world.isChunkLoaded(chunkX, chunkZ)) world.loadChunk(chunkX, chunkZ);
+				Chunk chunk = world.getChunkAt(chunkX, chunkZ);
+				// part of the cuboid within this chunk
+				int fromX = Math.max(coords[0], chunkX << 4), toX = Math.min(coords[3], (chunkX << 4) + 15);
+				int fromZ = Math.max(coords[2], chunkZ << 4), toZ = Math.min(coords[5], (chunkZ << 4) + 15);
+				for (int x = fromX; x <= toX; x++)
+					for (int z = fromZ; z <= toZ; z++)
+						for (int y = coords[1]; y <= coords[4]; y++) {
+							if (!cuboid.contains(x, y, z)) continue; // regions may be smaller than their bounding box
+							int typeId = world.getBlockTypeIdAt(x, y, z);
+							byte data = typeId == 0 ? 0 : chunk.getBlock(x & 15, y, z & 15).getData(); // air has no data
+							if (game.checkMayBreakBlock(world, x, y, z, typeId, data)) // can this block be broken
+								visitor.visit(x, y, z, typeId, data);
+						}
+			}
+	}
+}
@@ -3,8 +3,7 @@
  */
 package de.beimax.simplespleef.util;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Arrays;
 
 import org.bukkit.Location;
 import org.bukkit.World;
@@ -68,7 +67,8 @@ public class CuboidImpl implements Cuboid {
 	 * @param Z
 	 * @return
 	 */
-	protected boolean contains(int X, int Y, int Z) {
+	@Override
+	public boolean contains(int X, int Y, int Z) {
 		//System.out.println(coords[0] + "/" + coords[3] + " - " + X);
 		//System.out.println(coords[1] + "/" + coords[4] + " - " + Y);
 		//System.out.println(coords[2] + "/" + coords[5] + " - " + Z);
@@ -110,6 +110,38 @@ public class CuboidImpl implements Cuboid {
 		return onWorld(location.getWorld()) && contains(location.getBlockX(), location.getBlockY(), location.getBlockZ());
 	}
 
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.util.Cuboid#getWorld()
+	 */
+	@Override
+	public World getWorld() {
+		return world;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.util.Cuboid#isRectangular()
+	 */
+	@Override
+	public boolean isRectangular() {
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.util.Cuboid#getDefinition()
+	 */
+	@Override
+	public String getDefinition() {
+		return world.getName() + Arrays.toString(getCoords());
+	}
+
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.util.Cuboid#getCoords()
+	 */
+	@Override
+	public int[] getCoords() {
+		return coords.clone();
+	}
+
 	/* (non-Javadoc)
 	 * @see de.beimax.simplespleef.util.Cuboid#getSerializedBlocks()
 	 */
@@ -137,25 +169,19 @@ public class CuboidImpl implements Cuboid {
 			for (int y = 0; y < blockData[0].length; y++)
 				for (int z = 0; z < blockData[0][0].length; z++) {
 					Block block = this.world.getBlockAt(this.coords[0] + x, this.coords[1] + y, this.coords[2] + z);
-					block.setTypeId(blockData[x][y][z].getTypeId());
-					block.setData(blockData[x][y][z].getData());
+					// only write changed blocks
+					if (block.getTypeId() != blockData[x][y][z].getTypeId())
+						block.setTypeId(blockData[x][y][z].getTypeId());
+					if (block.getData() != blockData[x][y][z].getData())
+						block.setData(blockData[x][y][z].getData());
 				}
 	}
 
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.util.Cuboid#visitDiggableBlocks(de.beimax.simplespleef.game.Game, de.beimax.simplespleef.util.BlockVisitor)
+	 */
 	@Override
-	public List<Block> getDiggableBlocks(Game game) {
-		LinkedList<Block> diggableBlocks = new LinkedList<Block>();
-
-		// copy data from blocks
-		for (int x = this.coords[0]; x <= this.coords[3]; x++)
-			for (int y = this.coords[1]; y <= this.coords[4]; y++)
-				for (int z = this.coords[2]; z <= this.coords[5]; z++) {
-					Block block = this.world.getBlockAt(x, y, z);
-					if (block != null && game.checkMayBreakBlock(block)) { // can this block be broken
-						diggableBlocks.add(block);
-					}					
-				}
-
-		return diggableBlocks;
+	public void visitDiggableBlocks(Game game, BlockVisitor visitor) {
+		CuboidHelper.visitDiggableBlocks(this, game, visitor);
 	}
 }
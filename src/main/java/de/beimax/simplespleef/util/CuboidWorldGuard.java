@@ -3,7 +3,7 @@
  */
 package de.beimax.simplespleef.util;
 
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.bukkit.Location;
@@ -11,6 +11,8 @@ import org.bukkit.World;
 import org.bukkit.block.Block;
 
 import com.sk89q.worldedit.BlockVector;
+import com.sk89q.worldedit.BlockVector2D;
+import com.sk89q.worldguard.protection.regions.ProtectedCuboidRegion;
 import com.sk89q.worldguard.protection.regions.ProtectedRegion;
 
 import de.beimax.simplespleef.game.Game;
@@ -47,6 +49,60 @@ public class CuboidWorldGuard implements Cuboid {
 		return this.region.contains(location.getBlockX(), location.getBlockY(), location.getBlockZ());
 	}
 
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.util.Cuboid#contains(int, int, int)
+	 */
+	@Override
+	public boolean contains(int x, int y, int z) {
+		return this.region.contains(x, y, z);
+	}
+
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.util.Cuboid#getWorld()
+	 */
+	@Override
+	public World getWorld() {
+		return world;
+	}
+
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.util.Cuboid#isRectangular()
+	 */
+	@Override
+	public boolean isRectangular() {
+		return region instanceof ProtectedCuboidRegion; // polygons and other shapes need a region mask
+	}
+
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.util.Cuboid#getDefinition()
+	 */
+	@Override
+	public String getDefinition() {
+		// polygons may be redefined within the same bounds, so add the points, too
+		StringBuilder builder = new StringBuilder(world.getName()).append(Arrays.toString(getCoords())).append(region.getTypeName());
+		List<BlockVector2D> points = region.getPoints();
+		if (points != null)
+			for (BlockVector2D point : points)
+				builder.append(';').append(point.getBlockX()).append(',').append(point.getBlockZ());
+		return builder.toString();
+	}
+
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.util.Cuboid#getCoords()
+	 */
+	@Override
+	public int[] getCoords() {
+		BlockVector max = region.getMaximumPoint();
+		BlockVector min = region.getMinimumPoint();
+
+		return new int[]{(min.getBlockX()<max.getBlockX()?min.getBlockX():max.getBlockX()),
+			(min.getBlockY()<max.getBlockY()?min.getBlockY():max.getBlockY()),
+			(min.getBlockZ()<max.getBlockZ()?min.getBlockZ():max.getBlockZ()),
+			(min.getBlockX()>max.getBlockX()?min.getBlockX():max.getBlockX()),
+			(min.getBlockY()>max.getBlockY()?min.getBlockY():max.getBlockY()),
+			(min.getBlockZ()>max.getBlockZ()?min.getBlockZ():max.getBlockZ())};
+	}
+
 	/* (non-Javadoc)
 	 * @see de.beimax.simplespleef.util.Cuboid#getSerializedBlocks()
 	 */
@@ -96,38 +152,21 @@ public class CuboidWorldGuard implements Cuboid {
 				for (int z = 0; z < blockData[0][0].length; z++) {
 					if (this.region.contains(coords[0] + x, coords[1] + y, coords[2] + z)) { // only restore, if within the region
 						Block block = this.world.getBlockAt(coords[0] + x, coords[1] + y, coords[2] + z);
-						block.setTypeId(blockData[x][y][z].getTypeId());
-						block.setData(blockData[x][y][z].getData());
+						// only write changed blocks
+						if (block.getTypeId() != blockData[x][y][z].getTypeId())
+							block.setTypeId(blockData[x][y][z].getTypeId());
+						if (block.getData() != blockData[x][y][z].getData())
+							block.setData(blockData[x][y][z].getData());
 					}
 				}
 	}
 
 
+	/* (non-Javadoc)
+	 * @see de.beimax.simplespleef.util.Cuboid#visitDiggableBlocks(de.beimax.simplespleef.game.Game, de.beimax.simplespleef.util.BlockVisitor)
+	 */
 	@Override
-	public List<Block> getDiggableBlocks(Game game) {
-		BlockVector max = region.getMaximumPoint();
-		BlockVector min = region.getMinimumPoint();
-		
-		LinkedList<Block> diggableBlocks = new LinkedList<Block>();
-		
-		// get blocks
-		final int[] coords = {(min.getBlockX()<max.getBlockX()?min.getBlockX():max.getBlockX()),
-			(min.getBlockY()<max.getBlockY()?min.getBlockY():max.getBlockY()),
-			(min.getBlockZ()<max.getBlockZ()?min.getBlockZ():max.getBlockZ()),
-			(min.getBlockX()>max.getBlockX()?min.getBlockX():max.getBlockX()),
-			(min.getBlockY()>max.getBlockY()?min.getBlockY():max.getBlockY()),
-			(min.getBlockZ()>max.getBlockZ()?min.getBlockZ():max.getBlockZ())};
-
-		// copy data from blocks
-		for (int x = coords[0]; x <= coords[3]; x++)
-			for (int y = coords[1]; y <= coords[4]; y++)
-				for (int z = coords[2]; z <= coords[5]; z++) {
-					Block block = this.world.getBlockAt(x, y, z);
-					if (block != null && this.region.contains(x, y, z) && game.checkMayBreakBlock(block)) { // can this block be broken and within the region
-						diggableBlocks.add(block);
-					}
-				}
-
-		return diggableBlocks;
+	public void visitDiggableBlocks(Game game, BlockVisitor visitor) {
+		CuboidHelper.visitDiggableBlocks(this, game, visitor);
 	}
 }
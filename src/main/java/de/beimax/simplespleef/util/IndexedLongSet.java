@@ -0,0 +1,203 @@
+/**
+ * This file is part of the SimpleSpleef bukkit plugin.
+ * Copyright (C) 2011 Maximilian Kalus
+ * See http://dev.bukkit.org/server-mods/simple-spleef/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package de.beimax.simplespleef.util;
+
+import java.util.Random;
+
+/**
+ * @author mkalus
+ * Set of primitive longs supporting add, remove, contains and picking a random element in constant time:
+ * elements are kept in a dense array, an open addressing hash table maps each element to its index in the array.
+ * Removed elements are replaced by the last element of the array.
+ */
+public class IndexedLongSet {
+	/**
+	 * dense array of elements
+	 */
+	private long[] elements;
+
+	/**
+	 * hash table: index of element in dense array + 1, 0 marks empty slots
+	 */
+	private int[] table;
+
+	/**
+	 * number of elements
+	 */
+	private int size = 0;
+
+	/**
+	 * Constructor
+	 */
+	public IndexedLongSet() {
+		this(64);
+	}
+
+	/**
+	 * Constructor
+	 * @param capacity expected number of elements
+	 */
+	public IndexedLongSet(int capacity) {
+		int tableSize = 16;
+		while (tableSize < capacity * 2) tableSize <<= 1;
+		table = new int[tableSize];
+		elements = new long[tableSize / 2];
+	}
+
+	/**
+	 * add value
+	 * @param value
+	 * @return true, if the value has not been in the set before
+	 */
+	public boolean add(long value) {
+		int mask = table.length - 1;
+		int i = hash(value) & mask;
+		while (table[i] != 0) {
+			if (elements[table[i] - 1] == value) return false;
+			i = (i + 1) & mask;
+		}
+		if (size == elements.length) {
+			long[] newElements = new long[elements.length * 2];
+			System.arraycopy(elements, 0, newElements, 0, size);
+			elements = newElements;
+		}
+		elements[size++] = value;
+		table[i] = size;
+		// keep load factor below 0.5
+		if (size * 2 > table.length) rehash();
+		return true;
+	}
+
+	/**
+	 * remove value
+	 * @param value
+	 * @return true, if the value has been in the set
+	 */
+	public boolean remove(long value) {
+		int slot = findSlot(value);
+		if (slot < 0) return false;
+		int index = table[slot] - 1;
+		deleteSlot(slot);
+
+		// move last element into the gap
+		int last = size - 1;
+		if (index != last) {
+			long moved = elements[last];
+			elements[index] = moved;
+			table[findSlot(moved)] = index + 1;
+		}
+		size--;
+		return true;
+	}
+
+	/**
+	 * @param value
+	 * @return true, if the value is in the set
+	 */
+	public boolean contains(long value) {
+		return findSlot(value) >= 0;
+	}
+
+	/**
+	 * @param random
+	 * @return random element - set must not be empty
+	 */
+	public long getRandom(Random random) {
+		return elements[random.nextInt(size)];
+	}
+
+	/**
+	 * @return copy of all elements
+	 */
+	public long[] toArray() {
+		long[] array = new long[size];
+		System.arraycopy(elements, 0, array, 0, size);
+		return array;
+	}
+
+	/**
+	 * @return number of elements
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true, if there are no elements in the set
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @param value
+	 * @return slot of value in the hash table or -1
+	 */
+	private int findSlot(long value) {
+		int mask = table.length - 1;
+		int i = hash(value) & mask;
+		while (table[i] != 0) {
+			if (elements[table[i] - 1] == value) return i;
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * empty a slot and shift following entries back, so no lookup chain is broken
+	 * @param slot
+	 */
+	private void deleteSlot(int slot) {
+		int mask = table.length - 1;
+		int gap = slot;
+		int i = (slot + 1) & mask;
+		while (table[i] != 0) {
+			int home = hash(elements[table[i] - 1]) & mask;
+			// entry may be moved into the gap, if its home slot is not between gap and current slot
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				table[gap] = table[i];
+				gap = i;
+			}
+			i = (i + 1) & mask;
+		}
+		table[gap] = 0;
+	}
+
+	/**
+	 * double size of table
+	 */
+	private void rehash() {
+		table = new int[table.length * 2];
+		int mask = table.length - 1;
+		for (int index = 0; index < size; index++) {
+			int i = hash(elements[index]) & mask;
+			while (table[i] != 0) i = (i + 1) & mask;
+			table[i] = index + 1;
+		}
+	}
+
+	/**
+	 * @param value
+	 * @return spread hash of value
+	 */
+	private static int hash(long value) {
+		long h = value * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ * This file is part of the SimpleSpleef bukkit plugin.
+ * Copyright (C) 2011 Maximilian Kalus
+ * See http://dev.bukkit.org/server-mods/simple-spleef/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package de.beimax.simplespleef.util;
+
+/**
+ * @author mkalus
+ * Simple open addressing hash set of primitive longs - avoids boxing of packed positions
+ */
+public class LongHashSet {
+	/**
+	 * marks empty slots in the table
+	 */
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	/**
+	 * hash table
+	 */
+	private long[] table;
+
+	/**
+	 * the EMPTY value itself is kept outside of the table
+	 */
+	private boolean containsEmpty = false;
+
+	/**
+	 * number of elements
+	 */
+	private int size = 0;
+
+	/**
+	 * Constructor
+	 */
+	public LongHashSet() {
+		this(64);
+	}
+
+	/**
+	 * Constructor
+	 * @param capacity expected number of elements
+	 */
+	public LongHashSet(int capacity) {
+		int tableSize = 16;
+		while (tableSize < capacity * 2) tableSize <<= 1;
+		table = newTable(tableSize);
+	}
+
+	/**
+	 * add value
+	 * @param value
+	 * @return true, if the value has not been in the set before
+	 */
+	public boolean add(long value) {
+		if (value == EMPTY) {
+			if (containsEmpty) return false;
+			containsEmpty = true;
+			size++;
+			return true;
+		}
+		int mask = table.length - 1;
+		int i = hash(value) & mask;
+		while (table[i] != EMPTY) {
+			if (table[i] == value) return false;
+			i = (i + 1) & mask;
+		}
+		table[i] = value;
+		// keep load factor below 0.5
+		if (++size * 2 > table.length) rehash();
+		return true;
+	}
+
+	/**
+	 * @param value
+	 * @return true, if the value is in the set
+	 */
+	public boolean contains(long value) {
+		if (value == EMPTY) return containsEmpty;
+		int mask = table.length - 1;
+		int i = hash(value) & mask;
+		while (table[i] != EMPTY) {
+			if (table[i] == value) return true;
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * @return number of elements
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * double size of table
+	 */
+	private void rehash() {
+		long[] oldTable = table;
+		table = newTable(oldTable.length * 2);
+		int mask = table.length - 1;
+		for (long value : oldTable) {
+			if (value == EMPTY) continue;
+			int i = hash(value) & mask;
+			while (table[i] != EMPTY) i = (i + 1) & mask;
+			table[i] = value;
+		}
+	}
+
+	/**
+	 * @param size
+	 * @return empty table
+	 */
+	private static long[] newTable(int size) {
+		long[] table = new long[size];
+		java.util.Arrays.fill(table, EMPTY);
+		return table;
+	}
+
+	/**
+	 * @param value
+	 * @return spread hash of value
+	 */
+	private static int hash(long value) {
+		long h = value * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -18,12 +18,14 @@
  **/
 package de.beimax.simplespleef.util;
 
+import java.util.LinkedList;
 import java.util.List;
 
 import org.bukkit.Material;
-import org.bukkit.block.Block;
 import org.bukkit.inventory.ItemStack;
 
+import de.beimax.simplespleef.SimpleSpleef;
+
 /**
  * @author mkalus
  *
@@ -107,38 +109,39 @@ public abstract class MaterialHelper {
 	}
 	
 	/**
-	 * Checks a block an returns true if similar to compareBlock
-	 * @param block
-	 * @param compareBlock
-	 * @return
+	 * Compile a list of config lines (like WOOL or WOOL:14) into a block matcher - lines without data value match any data
+	 * @param lines
+	 * @return matcher (empty, if no valid lines were given)
 	 */
-	public static boolean isSameBlockType(Block block, ItemStack compareBlock) {
-		if (block == null || compareBlock == null) return false; // no NPEs
-		
-		if (block.getTypeId() != compareBlock.getTypeId()) return false;
-		try {
-			// either type is -1 or data value matches
-			if (compareBlock.getData().getData() == -1 || block.getData() == compareBlock.getData().getData())
-				return true; // found -> return state						
-		} catch (NullPointerException e) { // possibly thrown by compareBlock.getData() if data was -1
-			return true;
+	public static BlockMatcher compileMatcher(List<String> lines) {
+		if (lines == null) return BlockMatcher.EMPTY;
+		char[] masks = new char[0];
+		for (String line : lines) {
+			ItemStack stack = getItemStackFromString(line, true);
+			if (stack == null || stack.getTypeId() < 0) continue; // syntax error
+			if (stack.getTypeId() >= masks.length) { // grow table
+				char[] newMasks = new char[stack.getTypeId() + 1];
+				System.arraycopy(masks, 0, newMasks, 0, masks.length);
+				masks = newMasks;
+			}
+			short dmg = stack.getDurability();
+			if (dmg == -1) masks[stack.getTypeId()] = BlockMatcher.ANY_DATA; // -1 is any type
+			else if (dmg < 0 || dmg > 15) // blocks only know data values 0 to 15
+				SimpleSpleef.log.warning("[SimpleSpleef] Ignoring block " + line + " - data value has to be between 0 and 15.");
+			else masks[stack.getTypeId()] |= 1 << dmg;
 		}
-		
-		return false;
+		return new BlockMatcher(masks);
 	}
-	
+
 	/**
-	 * Checks a block an returns true if similar to one of the compareBlocks
-	 * @param block
-	 * @param compareBlocks
-	 * @return
+	 * Compile a single config line (like WOOL or WOOL:14) into a block matcher
+	 * @param line
+	 * @return matcher (empty, if line was not valid)
 	 */
-	public static boolean isSameBlockType(Block block, List<ItemStack> compareBlocks) {
-		for (ItemStack compareBlock : compareBlocks) { // cycle through blocks to compare stuff
-			if (isSameBlockType(block, compareBlock)) return true;
-		}
-		// not found
-		return false; // negate
-		
+	public static BlockMatcher compileMatcher(String line) {
+		if (line == null) return BlockMatcher.EMPTY;
+		List<String> lines = new LinkedList<String>();
+		lines.add(line);
+		return compileMatcher(lines);
 	}
 }
@@ -0,0 +1,86 @@
+/**
+ * This file is part of the SimpleSpleef bukkit plugin.
+ * Copyright (C) 2011 Maximilian Kalus
+ * See http://dev.bukkit.org/server-mods/simple-spleef/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package de.beimax.simplespleef.util;
+
+/**
+ * @author mkalus
+ * Helper to keep block type and data (or block positions) in a single primitive value instead of objects
+ */
+public abstract class PackedBlock {
+	/**
+	 * pack type id and data value into a single int
+	 * @param typeId
+	 * @param data
+	 * @return
+	 */
+	public static int pack(int typeId, byte data) {
+		return (typeId << 8) | (data & 0xFF);
+	}
+
+	/**
+	 * @param packed block value
+	 * @return the typeId
+	 */
+	public static int getTypeId(int packed) {
+		return packed >>> 8;
+	}
+
+	/**
+	 * @param packed block value
+	 * @return the data
+	 */
+	public static byte getData(int packed) {
+		return (byte) packed;
+	}
+
+	/**
+	 * pack position into a single long - 26 bits for x and z, 12 bits for y, all signed
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return
+	 */
+	public static long packPosition(int x, int y, int z) {
+		return ((long) (x & 0x3FFFFFF) << 38) | ((long) (y & 0xFFF) << 26) | (z & 0x3FFFFFF);
+	}
+
+	/**
+	 * @param packed position
+	 * @return the x coordinate
+	 */
+	public static int getX(long packed) {
+		return (int) (packed >> 38);
+	}
+
+	/**
+	 * @param packed position
+	 * @return the y coordinate
+	 */
+	public static int getY(long packed) {
+		return (int) (packed << 26 >> 52);
+	}
+
+	/**
+	 * @param packed position
+	 * @return the z coordinate
+	 */
+	public static int getZ(long packed) {
+		return (int) (packed << 38 >> 38);
+	}
+}
@@ -0,0 +1,192 @@
+/**
+ *
+ */
+package de.beimax.simplespleef.game;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+import org.junit.Test;
+
+/**
+ * @author mkalus
+ *
+ */
+public class PlayerOnBlockDegeneratorTest {
+	/**
+	 * players
+	 */
+	private final Player alice = createProxy(Player.class, null);
+	private final Player bob = createProxy(Player.class, null);
+
+	@Test
+	public void testDegenerateAfterDelay() {
+		RecordingDegenerator degenerator = new RecordingDegenerator(1, 1);
+		degenerator.updatePlayer(alice, block(0, 60, 0, 35));
+		tick(degenerator, 19);
+		assertEquals(0, degenerator.degenerated.size());
+		tick(degenerator, 1);
+		assertEquals(Arrays.asList("0,60,0"), degenerator.degenerated);
+		tick(degenerator, 300); // only once
+		assertEquals(1, degenerator.degenerated.size());
+	}
+
+	@Test
+	public void testDeadlineLaterThanWheel() {
+		// 400 ticks: slot of the deadline comes up at tick 144 first
+		RecordingDegenerator degenerator = new RecordingDegenerator(20, 1);
+		degenerator.updatePlayer(alice, block(0, 60, 0, 35));
+		tick(degenerator, 399);
+		assertEquals(0, degenerator.degenerated.size());
+		tick(degenerator, 1);
+		assertEquals(1, degenerator.degenerated.size());
+	}
+
+	@Test
+	public void testMovingOnCancels() {
+		RecordingDegenerator degenerator = new RecordingDegenerator(1, 1);
+		degenerator.updatePlayer(alice, block(0, 60, 0, 35));
+		tick(degenerator, 5);
+		degenerator.updatePlayer(alice, block(0, 60, 0, 35)); // same block keeps its deadline
+		degenerator.updatePlayer(alice, block(1, 60, 0, 35));
+		tick(degenerator, 15);
+		assertEquals(0, degenerator.degenerated.size());
+		tick(degenerator, 5);
+		assertEquals(Arrays.asList("1,60,0"), degenerator.degenerated);
+	}
+
+	@Test
+	public void testBlocksPerPlayer() {
+		RecordingDegenerator degenerator = new RecordingDegenerator(1, 2);
+		degenerator.updatePlayer(alice, block(0, 60, 0, 35));
+		tick(degenerator, 5);
+		degenerator.updatePlayer(alice, block(1, 60, 0, 35));
+		tick(degenerator, 5);
+		degenerator.updatePlayer(alice, block(0, 60, 0, 35)); // walking back keeps the first deadline
+		tick(degenerator, 10);
+		assertEquals(Arrays.asList("0,60,0"), degenerator.degenerated);
+		degenerator.updatePlayer(alice, block(2, 60, 0, 35));
+		tick(degenerator, 1);
+		degenerator.updatePlayer(alice, block(3, 60, 0, 35)); // drops 1,60,0
+		tick(degenerator, 20);
+		assertEquals(Arrays.asList("0,60,0", "2,60,0", "3,60,0"), degenerator.degenerated);
+	}
+
+	@Test
+	public void testRemovePlayerCancels() {
+		RecordingDegenerator degenerator = new RecordingDegenerator(1, 1);
+		degenerator.updatePlayer(alice, block(0, 60, 0, 35));
+		degenerator.updatePlayer(bob, block(5, 60, 5, 35));
+		degenerator.removePlayer(alice);
+		tick(degenerator, 20);
+		assertEquals(Arrays.asList("5,60,5"), degenerator.degenerated);
+	}
+
+	@Test
+	public void testDegeneratingBlocks() {
+		RecordingDegenerator degenerator = new RecordingDegenerator(1, 1, Arrays.asList("WOOL"));
+		degenerator.updatePlayer(alice, block(0, 60, 0, 1)); // stone stays
+		degenerator.updatePlayer(bob, block(5, 60, 5, 35));
+		degenerator.updatePlayer(bob, block(6, 60, 5, 0)); // air is ignored, wool keeps degenerating
+		tick(degenerator, 20);
+		assertEquals(Arrays.asList("5,60,5"), degenerator.degenerated);
+	}
+
+	/**
+	 * run degenerator for a number of ticks
+	 * @param degenerator
+	 * @param ticks
+	 */
+	protected void tick(PlayerOnBlockDegenerator degenerator, int ticks) {
+		for (int i = 0; i < ticks; i++)
+			degenerator.run();
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param typeId
+	 * @return block in no world
+	 */
+	protected Block block(final int x, final int y, final int z, final int typeId) {
+		return createProxy(Block.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				String name = method.getName();
+				if (name.equals("getX")) return x;
+				if (name.equals("getY")) return y;
+				if (name.equals("getZ")) return z;
+				if (name.equals("getTypeId")) return typeId;
+				if (name.equals("getType")) return Material.getMaterial(typeId);
+				if (name.equals("getData")) return (byte) 0;
+				if (name.equals("getWorld")) return null;
+				throw new UnsupportedOperationException(name);
+			}
+		});
+	}
+
+	/**
+	 * @param type
+	 * @param handler handles calls other than equals and hashCode (may be null)
+	 * @return proxy of an interface
+	 */
+	private static <T> T createProxy(Class<T> type, final InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("equals")) return proxy == args[0];
+				if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+				if (handler == null) throw new UnsupportedOperationException(method.getName());
+				return handler.invoke(proxy, method, args);
+			}
+		}));
+	}
+
+	/**
+	 * degenerator recording degenerated blocks instead of changing them
+	 */
+	private static class RecordingDegenerator extends PlayerOnBlockDegenerator {
+		/**
+		 * degenerated blocks as "x,y,z"
+		 */
+		private final List<String> degenerated = new ArrayList<String>();
+
+		/**
+		 * Constructor
+		 * @param seconds
+		 * @param blocksPerPlayer
+		 */
+		public RecordingDegenerator(int seconds, int blocksPerPlayer) {
+			this(seconds, blocksPerPlayer, null);
+		}
+
+		/**
+		 * Constructor
+		 * @param seconds
+		 * @param blocksPerPlayer
+		 * @param degeneratingBlocks
+		 */
+		public RecordingDegenerator(int seconds, int blocksPerPlayer, List<String> degeneratingBlocks) {
+			super(seconds, blocksPerPlayer, degeneratingBlocks, null, null);
+		}
+
+		/* (non-Javadoc)
+		 * @see de.beimax.simplespleef.game.PlayerOnBlockDegenerator#degenerateBlock(org.bukkit.World, int, int, int)
+		 */
+		@Override
+		protected void degenerateBlock(World world, int x, int y, int z) {
+			degenerated.add(x + "," + y + "," + z);
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/**
+ *
+ */
+package de.beimax.simplespleef.game.arenarestoring;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.beimax.simplespleef.util.Cuboid;
+import de.beimax.simplespleef.util.CuboidImpl;
+import de.beimax.simplespleef.util.PackedBlock;
+
+/**
+ * @author mkalus
+ *
+ */
+public class ArenaSnapshotTest {
+	/**
+	 * world of the arena
+	 */
+	private FakeWorld world;
+
+	/**
+	 * arena - crosses chunk borders and the origin
+	 */
+	private Cuboid arena;
+
+	@Before
+	public void setUp() {
+		world = new FakeWorld("world");
+		arena = new CuboidImpl(world.getWorld(), -20, 60, -3, 5, 64, 18);
+		// stone walls, a wool floor of different colors and air above
+		for (int x = -20; x <= 5; x++)
+			for (int z = -3; z <= 18; z++) {
+				world.set(x, 60, z, 35, (byte) ((x + z) & 15));
+				if (x == -20 || x == 5 || z == -3 || z == 18)
+					for (int y = 61; y <= 64; y++)
+						world.set(x, y, z, 1, (byte) 0);
+			}
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		int[][][] original = SnapshotTestHelper.copy(world, arena);
+		byte[] snapshot = SnapshotTestHelper.write(arena);
+
+		// dig the floor and build something
+		Random random = new Random(42);
+		for (int i = 0; i < 300; i++)
+			world.set(-20 + random.nextInt(26), 60 + random.nextInt(5), -3 + random.nextInt(22), random.nextInt(2) * 4, (byte) 0);
+
+		ArenaSnapshotReader reader = new ArenaSnapshotReader(ByteBuffer.wrap(snapshot));
+		assertEquals("world", reader.getWorldName());
+		assertArrayEquals(arena.getCoords(), reader.getCoords());
+		assertEquals(26, reader.getSliceCount());
+		reader.restore(arena);
+
+		assertArrayEquals(original, SnapshotTestHelper.copy(world, arena));
+	}
+
+	@Test
+	public void testBlocksOutsideArenaUntouched() throws IOException {
+		byte[] snapshot = SnapshotTestHelper.write(arena);
+		world.set(6, 60, 0, 1, (byte) 0);
+		world.set(-21, 60, 0, 1, (byte) 0);
+		new ArenaSnapshotReader(ByteBuffer.wrap(snapshot)).restore(arena);
+		assertEquals(1 << 8, world.get(6, 60, 0));
+		assertEquals(1 << 8, world.get(-21, 60, 0));
+	}
+
+	@Test
+	public void testOnlyChangedBlocksWritten() throws IOException {
+		byte[] snapshot = SnapshotTestHelper.write(arena);
+		world.set(0, 60, 0, 35, (byte) 3); // other color only
+		world.set(1, 60, 0, 0, (byte) 0);
+		ArenaSnapshotReader reader = new ArenaSnapshotReader(ByteBuffer.wrap(snapshot));
+		reader.restore(arena);
+		assertEquals(2, reader.getWritten());
+		assertEquals(26 * 5 * 22 - 2, reader.getSkipped());
+		assertEquals(PackedBlock.pack(35, (byte) 0), world.get(0, 60, 0));
+	}
+
+	@Test
+	public void testRestoreInSteps() throws IOException {
+		int[][][] original = SnapshotTestHelper.copy(world, arena);
+		byte[] snapshot = SnapshotTestHelper.write(arena);
+		for (int x = -20; x <= 5; x++)
+			for (int y = 60; y <= 64; y++)
+				for (int z = -3; z <= 18; z++)
+					world.set(x, y, z, 3, (byte) (z & 15)); // fill everything
+
+		// no time budget: each call stops after a few blocks and the next one continues at the cursor
+		ArenaSnapshotReader reader = new ArenaSnapshotReader(ByteBuffer.wrap(snapshot));
+		int calls = 0;
+		double progress = 0.0;
+		while (!reader.restore(arena, 0L)) {
+			assertTrue(reader.getProgress() >= progress);
+			progress = reader.getProgress();
+			calls++;
+		}
+		assertTrue(calls > 10);
+		assertTrue(reader.isFinished());
+		assertEquals(1.0, reader.getProgress(), 0.0);
+		assertArrayEquals(original, SnapshotTestHelper.copy(world, arena));
+	}
+
+	@Test
+	public void testRestoreFromMappedFile() throws IOException {
+		int[][][] original = SnapshotTestHelper.copy(world, arena);
+		File file = File.createTempFile("arena_test", ".save");
+		try {
+			FileOutputStream out = new FileOutputStream(file);
+			try {
+				ArenaSnapshotWriter.write(arena, out);
+			} finally {
+				out.close();
+			}
+			for (int x = -20; x <= 5; x++)
+				for (int z = -3; z <= 18; z++)
+					world.set(x, 60, z, 0, (byte) 0); // floor is gone
+
+			RandomAccessFile raFile = new RandomAccessFile(file, "r");
+			MappedByteBuffer buffer;
+			try {
+				buffer = raFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+			} finally {
+				raFile.close();
+			}
+			new ArenaSnapshotReader(buffer).restore(arena);
+		} finally {
+			file.delete();
+		}
+		assertArrayEquals(original, SnapshotTestHelper.copy(world, arena));
+	}
+
+	@Test(expected = IOException.class)
+	public void testCorruptSnapshotRejected() throws IOException {
+		byte[] snapshot = SnapshotTestHelper.write(arena);
+		snapshot[snapshot.length / 2] ^= 0x10; // flip a bit in the body
+		new ArenaSnapshotReader(ByteBuffer.wrap(snapshot));
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedSnapshotRejected() throws IOException {
+		byte[] snapshot = SnapshotTestHelper.write(arena);
+		new ArenaSnapshotReader(ByteBuffer.wrap(snapshot, 0, snapshot.length - 10).slice());
+	}
+
+	@Test(expected = IOException.class)
+	public void testChecksumRejected() throws IOException {
+		byte[] snapshot = SnapshotTestHelper.write(arena);
+		snapshot[snapshot.length - 1] ^= 1;
+		new ArenaSnapshotReader(ByteBuffer.wrap(snapshot));
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ *
+ */
+package de.beimax.simplespleef.game.arenarestoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author mkalus
+ *
+ */
+public class BlockJournalTest {
+	/**
+	 * world of the arena
+	 */
+	private FakeWorld world;
+
+	/**
+	 * journal with origin -20,60,-3
+	 */
+	private BlockJournal journal;
+
+	@Before
+	public void setUp() {
+		world = new FakeWorld("world");
+		journal = new BlockJournal(world.getWorld(), -20, 60, -3);
+	}
+
+	@Test
+	public void testRestore() {
+		for (int x = -20; x <= 5; x++) {
+			journal.add(x, 60, 0, 35, (byte) (x & 15)); // players dig the floor
+			world.set(x, 60, 0, 0, (byte) 0);
+		}
+		restore();
+		for (int x = -20; x <= 5; x++)
+			assertEquals(35 << 8 | (x & 15), world.get(x, 60, 0));
+	}
+
+	@Test
+	public void testUnchangedBlocksNotWritten() {
+		journal.add(0, 60, 0, 35, (byte) 14);
+		journal.add(1, 60, 0, 35, (byte) 14);
+		journal.add(2, 60, 0, 35, (byte) 14);
+		world.set(0, 60, 0, 35, (byte) 14); // put back by a player
+		world.set(1, 60, 0, 35, (byte) 1); // same type, other data
+		restore();
+		assertEquals(2, world.getWrites());
+		assertEquals(35 << 8 | 14, world.get(1, 60, 0));
+		assertEquals(35 << 8 | 14, world.get(2, 60, 0));
+	}
+
+	@Test
+	public void testFirstStateKept() {
+		// block changes several times during a game - only the state before the first change counts
+		journal.add(0, 60, 0, 35, (byte) 14);
+		journal.add(0, 60, 0, 0, (byte) 0);
+		journal.add(0, 60, 0, 4, (byte) 0);
+		journal.add(1, 60, 0, 35, (byte) 2);
+		journal.add(1, 60, 0, 35, (byte) 3);
+		assertEquals(2, journal.size());
+
+		world.set(0, 60, 0, 4, (byte) 0);
+		world.set(1, 60, 0, 0, (byte) 0);
+		restore();
+		assertEquals(35 << 8 | 14, world.get(0, 60, 0));
+		assertEquals(35 << 8 | 2, world.get(1, 60, 0));
+	}
+
+	@Test
+	public void testFirstStateKeptAcrossPages() {
+		// more entries than fit into one page of the journal
+		for (int i = 0; i < 3000; i++)
+			journal.add(i % 50, 60 + i / 2500, i / 50 % 50, 35, (byte) (i & 15));
+		assertEquals(3000, journal.size());
+		for (int i = 0; i < 3000; i++)
+			journal.add(i % 50, 60 + i / 2500, i / 50 % 50, 1, (byte) 0);
+		assertEquals(3000, journal.size());
+		restore();
+		for (int i = 0; i < 3000; i++)
+			assertEquals(35 << 8 | (i & 15), world.get(i % 50, 60 + i / 2500, i / 50 % 50));
+	}
+
+	@Test
+	public void testRestoreGroupedByChunk() {
+		// changes in random order spread over 3x2 chunks, on both sides of the origin
+		Random random = new Random(5);
+		for (int i = 0; i < 500; i++) {
+			int x = -20 + random.nextInt(32), y = 60 + random.nextInt(3), z = -3 + random.nextInt(19);
+			journal.add(x, y, z, 35, (byte) (x & 15));
+		}
+		restore();
+		assertEquals(6, world.getChunkLookups()); // each chunk is looked up once only
+		for (int x = -20; x < 12; x++)
+			for (int z = -3; z < 16; z++)
+				for (int y = 60; y < 63; y++) {
+					int value = world.get(x, y, z);
+					assertTrue(value == 0 || value == (35 << 8 | (x & 15)));
+				}
+	}
+
+	/**
+	 * restore all entries of the journal
+	 */
+	protected void restore() {
+		BlockJournal.RestoreIterator it = journal.restoreIterator();
+		while (it.hasNext())
+			it.restoreNext();
+	}
+}
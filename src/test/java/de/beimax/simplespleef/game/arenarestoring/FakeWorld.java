@@ -0,0 +1,226 @@
+/**
+ *
+ */
+package de.beimax.simplespleef.game.arenarestoring;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import de.beimax.simplespleef.util.PackedBlock;
+
+/**
+ * @author mkalus
+ * World kept in memory for tests - only block types and data are supported, blocks not set are air.
+ */
+class FakeWorld {
+	/**
+	 * name of world
+	 */
+	private final String name;
+
+	/**
+	 * packed block values by packed position
+	 */
+	private final Map<Long, Integer> blocks = new HashMap<Long, Integer>();
+
+	/**
+	 * world proxy
+	 */
+	private final World world;
+
+	/**
+	 * number of blocks written through block proxies
+	 */
+	private int writes = 0;
+
+	/**
+	 * number of chunks looked up
+	 */
+	private int chunkLookups = 0;
+
+	/**
+	 * Constructor
+	 * @param name
+	 */
+	public FakeWorld(String name) {
+		this.name = name;
+		this.world = proxy(World.class, new Handler() {
+			@Override
+			protected Object call(String method, Object[] args) {
+				if (method.equals("getName")) return FakeWorld.this.name;
+				if (method.equals("getBlockAt")) return getBlock((Integer) args[0], (Integer) args[1], (Integer) args[2]);
+				if (method.equals("getBlockTypeIdAt")) return PackedBlock.getTypeId(get((Integer) args[0], (Integer) args[1], (Integer) args[2]));
+				if (method.equals("getChunkAt")) {
+					chunkLookups++;
+					return getChunk((Integer) args[0], (Integer) args[1]);
+				}
+				if (method.equals("isChunkLoaded")) return true;
+				if (method.equals("loadChunk")) return null;
+				return unsupported(method);
+			}
+		});
+	}
+
+	/**
+	 * @return world proxy
+	 */
+	public World getWorld() {
+		return world;
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return packed type/data value
+	 */
+	public int get(int x, int y, int z) {
+		Integer value = blocks.get(PackedBlock.packPosition(x, y, z));
+		return value == null ? 0 : value;
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @param typeId
+	 * @param data
+	 */
+	public void set(int x, int y, int z, int typeId, byte data) {
+		blocks.put(PackedBlock.packPosition(x, y, z), PackedBlock.pack(typeId, data));
+	}
+
+	/**
+	 * @return number of blocks written through block proxies (set does not count)
+	 */
+	public int getWrites() {
+		return writes;
+	}
+
+	/**
+	 * @return number of chunks looked up through getChunkAt
+	 */
+	public int getChunkLookups() {
+		return chunkLookups;
+	}
+
+	/**
+	 * @return block proxy
+	 */
+	private Block getBlock(final int x, final int y, final int z) {
+		return proxy(Block.class, new Handler() {
+			@Override
+			protected Object call(String method, Object[] args) {
+				int value = get(x, y, z);
+				if (method.equals("getTypeId")) return PackedBlock.getTypeId(value);
+				if (method.equals("getData")) return PackedBlock.getData(value);
+				if (method.equals("getX")) return x;
+				if (method.equals("getY")) return y;
+				if (method.equals("getZ")) return z;
+				if (method.equals("getWorld")) return world;
+				if (method.startsWith("set")) writes++;
+				if (method.equals("setTypeId")) {
+					set(x, y, z, (Integer) args[0], PackedBlock.getData(value));
+					return true;
+				}
+				if (method.equals("setData")) {
+					set(x, y, z, PackedBlock.getTypeId(value), (Byte) args[0]);
+					return null;
+				}
+				if (method.equals("setTypeIdAndData")) {
+					set(x, y, z, (Integer) args[0], (Byte) args[1]);
+					return true;
+				}
+				return unsupported(method);
+			}
+		});
+	}
+
+	/**
+	 * @return chunk proxy
+	 */
+	private Chunk getChunk(final int chunkX, final int chunkZ) {
+		return proxy(Chunk.class, new Handler() {
+			@Override
+			protected Object call(String method, Object[] args) {
+				if (method.equals("getX")) return chunkX;
+				if (method.equals("getZ")) return chunkZ;
+				if (method.equals("getWorld")) return world;
+				if (method.equals("getChunkSnapshot")) return getChunkSnapshot(chunkX, chunkZ);
+				if (method.equals("getBlock")) return getBlock((chunkX << 4) + (Integer) args[0], (Integer) args[1], (chunkZ << 4) + (Integer) args[2]);
+				return unsupported(method);
+			}
+		});
+	}
+
+	/**
+	 * @return copy of the chunk
+	 */
+	private ChunkSnapshot getChunkSnapshot(final int chunkX, final int chunkZ) {
+		final Map<Long, Integer> copy = new HashMap<Long, Integer>();
+		for (Map.Entry<Long, Integer> entry : blocks.entrySet()) {
+			long position = entry.getKey();
+			if (PackedBlock.getX(position) >> 4 == chunkX && PackedBlock.getZ(position) >> 4 == chunkZ)
+				copy.put(position, entry.getValue());
+		}
+		return proxy(ChunkSnapshot.class, new Handler() {
+			@Override
+			protected Object call(String method, Object[] args) {
+				if (method.equals("getX")) return chunkX;
+				if (method.equals("getZ")) return chunkZ;
+				if (method.equals("getWorldName")) return name;
+				if (method.equals("getBlockTypeId") || method.equals("getBlockData")) {
+					Integer value = copy.get(PackedBlock.packPosition((chunkX << 4) + (Integer) args[0], (Integer) args[1], (chunkZ << 4) + (Integer) args[2]));
+					if (value == null) return 0;
+					return method.equals("getBlockTypeId") ? PackedBlock.getTypeId(value) : PackedBlock.getData(value) & 0xF;
+				}
+				return unsupported(method);
+			}
+		});
+	}
+
+	/**
+	 * @param type
+	 * @param handler
+	 * @return proxy of an interface
+	 */
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+	}
+
+	/**
+	 * handles calls by method name - identity is used for equals and hashCode
+	 */
+	private abstract static class Handler implements InvocationHandler {
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			if (method.getName().equals("equals")) return proxy == args[0];
+			if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+			if (method.getName().equals("toString")) return "FakeWorld proxy";
+			return call(method.getName(), args);
+		}
+
+		/**
+		 * @param method name of method
+		 * @param args
+		 * @return result
+		 */
+		protected abstract Object call(String method, Object[] args);
+
+		/**
+		 * @param method
+		 * @return nothing, throws exception
+		 */
+		protected Object unsupported(String method) {
+			throw new UnsupportedOperationException(method + " is not supported by the fake world");
+		}
+	}
+}
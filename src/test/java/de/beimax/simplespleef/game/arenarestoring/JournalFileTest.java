@@ -0,0 +1,151 @@
+/**
+ *
+ */
+package de.beimax.simplespleef.game.arenarestoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.bukkit.Server;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author mkalus
+ *
+ */
+public class JournalFileTest {
+	/**
+	 * world of the arena
+	 */
+	private FakeWorld world;
+
+	/**
+	 * server knowing the world only
+	 */
+	private Server server;
+
+	/**
+	 * journal file
+	 */
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		world = new FakeWorld("world");
+		server = (Server) Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[]{Server.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("getWorld"))
+					return args[0].equals("world") ? world.getWorld() : null;
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+		file = File.createTempFile("arena_test", ".journal");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testReadWritten() throws IOException {
+		BlockJournal journal = createJournal();
+		journal.getJournalFile().flush(); // header only
+		assertEquals(0, JournalFile.read(file, server).size());
+
+		for (int x = -20; x < 0; x++)
+			journal.add(x, 60, 5, 35, (byte) (x & 15));
+		journal.getJournalFile().flush();
+		journal.add(0, 60, 5, 35, (byte) 0);
+		journal.getJournalFile().flush();
+
+		BlockJournal read = JournalFile.read(file, server);
+		assertEquals(21, read.size());
+		restore(read);
+		for (int x = -20; x <= 0; x++)
+			assertEquals(35 << 8 | (x & 15), world.get(x, 60, 5));
+	}
+
+	@Test
+	public void testTornTailIgnored() throws IOException {
+		BlockJournal journal = createJournal();
+		for (int x = 0; x < 10; x++)
+			journal.add(x, 61, 0, 1, (byte) 0);
+		journal.getJournalFile().flush();
+
+		// server crashed while the last entry was written
+		RandomAccessFile raFile = new RandomAccessFile(file, "rw");
+		try {
+			raFile.setLength(raFile.length() - 5);
+		} finally {
+			raFile.close();
+		}
+
+		BlockJournal read = JournalFile.read(file, server);
+		assertEquals(9, read.size());
+		restore(read);
+		assertEquals(1 << 8, world.get(8, 61, 0));
+		assertEquals(0, world.get(9, 61, 0));
+	}
+
+	@Test
+	public void testUnknownWorld() throws IOException {
+		FakeWorld other = new FakeWorld("gone");
+		BlockJournal journal = new BlockJournal(other.getWorld(), 0, 0, 0);
+		JournalFile journalFile = new JournalFile(file, journal);
+		journalFile.flush();
+		assertNull(JournalFile.read(file, server));
+	}
+
+	@Test(expected = IOException.class)
+	public void testInvalidFileRejected() throws IOException {
+		RandomAccessFile raFile = new RandomAccessFile(file, "rw");
+		try {
+			raFile.writeInt(0x12345678);
+		} finally {
+			raFile.close();
+		}
+		JournalFile.read(file, server);
+	}
+
+	@Test
+	public void testDelete() {
+		BlockJournal journal = createJournal();
+		journal.add(0, 60, 0, 1, (byte) 0);
+		journal.getJournalFile().flush();
+		journal.getJournalFile().delete();
+		assertFalse(file.exists());
+		journal.getJournalFile().flush(); // no effect after deletion
+		assertFalse(file.exists());
+	}
+
+	/**
+	 * @return journal copied to the journal file
+	 */
+	protected BlockJournal createJournal() {
+		BlockJournal journal = new BlockJournal(world.getWorld(), -20, 60, -3);
+		journal.setJournalFile(new JournalFile(file, journal));
+		return journal;
+	}
+
+	/**
+	 * restore all entries of a journal
+	 * @param journal
+	 */
+	protected void restore(BlockJournal journal) {
+		BlockJournal.RestoreIterator it = journal.restoreIterator();
+		while (it.hasNext())
+			it.restoreNext();
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ *
+ */
+package de.beimax.simplespleef.game.arenarestoring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.bukkit.World;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.beimax.simplespleef.util.Cuboid;
+import de.beimax.simplespleef.util.CuboidImpl;
+
+/**
+ * @author mkalus
+ *
+ */
+public class RegionMaskTest {
+	/**
+	 * world of the arena
+	 */
+	private FakeWorld world;
+
+	/**
+	 * round arena within bounding box -10,60,-10 to 10,62,10
+	 */
+	private Cuboid region;
+
+	@Before
+	public void setUp() {
+		world = new FakeWorld("world");
+		region = new CircleRegion(world.getWorld(), 10);
+		for (int x = -10; x <= 10; x++)
+			for (int z = -10; z <= 10; z++)
+				world.set(x, 60, z, 35, (byte) (x & 15));
+	}
+
+	@Test
+	public void testNoMaskForCuboids() {
+		assertNull(RegionMask.create(new CuboidImpl(world.getWorld(), 0, 0, 0, 15, 15, 15)));
+	}
+
+	@Test
+	public void testBits() {
+		RegionMask mask = new RegionMask(new long[] {1L | 1L << 63, 0L, 1L << 2});
+		assertTrue(mask.get(0));
+		assertFalse(mask.get(1));
+		assertTrue(mask.get(63));
+		assertFalse(mask.get(64));
+		assertTrue(mask.get(130));
+		assertEquals(0, mask.nextSetBit(0));
+		assertEquals(63, mask.nextSetBit(1));
+		assertEquals(63, mask.nextSetBit(63));
+		assertEquals(130, mask.nextSetBit(64));
+		assertEquals(-1, mask.nextSetBit(131));
+		assertEquals(-1, mask.nextSetBit(192));
+	}
+
+	@Test
+	public void testMaskOrder() {
+		RegionMask mask = RegionMask.create(region);
+		int index = 0;
+		for (int x = -10; x <= 10; x++)
+			for (int y = 60; y <= 62; y++)
+				for (int z = -10; z <= 10; z++)
+					assertEquals(region.contains(x, y, z), mask.get(index++));
+	}
+
+	@Test
+	public void testMaskedRoundTrip() throws IOException {
+		int[][][] original = SnapshotTestHelper.copy(world, region);
+		byte[] snapshot = SnapshotTestHelper.write(region);
+
+		// dig everything, including the corners outside of the circle
+		for (int x = -10; x <= 10; x++)
+			for (int z = -10; z <= 10; z++)
+				world.set(x, 60, z, 0, (byte) 0);
+
+		new ArenaSnapshotReader(ByteBuffer.wrap(snapshot)).restore(region);
+		int[][][] restored = SnapshotTestHelper.copy(world, region);
+		for (int x = -10; x <= 10; x++)
+			for (int z = -10; z <= 10; z++) {
+				if (region.contains(x, 60, z)) assertEquals(original[x + 10][0][z + 10], restored[x + 10][0][z + 10]);
+				else assertEquals(0, restored[x + 10][0][z + 10]); // corners are not part of the snapshot
+			}
+	}
+
+	/**
+	 * cylinder around the y axis, stands in for WorldGuard polygons
+	 */
+	private static class CircleRegion extends CuboidImpl {
+		/**
+		 * radius
+		 */
+		private final int radius;
+
+		/**
+		 * Constructor
+		 * @param world
+		 * @param radius
+		 */
+		public CircleRegion(World world, int radius) {
+			super(world, -radius, 60, -radius, radius, 62, radius);
+			this.radius = radius;
+		}
+
+		/* (non-Javadoc)
+		 * @see de.beimax.simplespleef.util.CuboidImpl#contains(int, int, int)
+		 */
+		@Override
+		public boolean contains(int X, int Y, int Z) {
+			return super.contains(X, Y, Z) && X * X + Z * Z <= radius * radius;
+		}
+
+		/* (non-Javadoc)
+		 * @see de.beimax.simplespleef.util.CuboidImpl#isRectangular()
+		 */
+		@Override
+		public boolean isRectangular() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ *
+ */
+package de.beimax.simplespleef.game.arenarestoring;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * @author mkalus
+ *
+ */
+public class RestoreRateControllerTest {
+	/**
+	 * one millisecond
+	 */
+	private static final long MS = 1000000L;
+
+	@Test
+	public void testBounds() {
+		assertEquals(40, new ManualClockController(1, 1000).getRate());
+		assertEquals(10, new ManualClockController(1, 10).getRate());
+		assertEquals(100, new ManualClockController(100, 1000).getRate());
+		assertEquals(1, new ManualClockController(0, 0).getRate());
+	}
+
+	@Test
+	public void testIncreaseWithHeadroom() {
+		ManualClockController controller = new ManualClockController(1, 100);
+		batch(controller, 50 * MS, 1 * MS, true);
+		assertEquals(50, controller.getRate());
+		for (int i = 0; i < 10; i++)
+			batch(controller, 50 * MS, 1 * MS, true);
+		assertEquals(100, controller.getRate()); // capped at maximum
+	}
+
+	@Test
+	public void testNoIncreaseWithoutWork() {
+		ManualClockController controller = new ManualClockController(1, 100);
+		batch(controller, 50 * MS, 1 * MS, false);
+		assertEquals(40, controller.getRate());
+	}
+
+	@Test
+	public void testBackOffOnSlowBatch() {
+		ManualClockController controller = new ManualClockController(5, 100);
+		batch(controller, 50 * MS, 11 * MS, true);
+		assertEquals(20, controller.getRate());
+		for (int i = 0; i < 5; i++)
+			batch(controller, 50 * MS, 11 * MS, true);
+		assertEquals(5, controller.getRate()); // not below minimum
+	}
+
+	@Test
+	public void testBackOffWhenServerLags() {
+		ManualClockController controller = new ManualClockController(1, 100);
+		batch(controller, 50 * MS, 1 * MS, true);
+		assertEquals(50, controller.getRate());
+		// a tick of 150 ms lifts the smoothed tick duration above the lag limit
+		batch(controller, 150 * MS, 1 * MS, true);
+		assertEquals(25, controller.getRate());
+		// smoothed duration stays above the limit for a few more normal ticks
+		batch(controller, 50 * MS, 1 * MS, true);
+		assertEquals(12, controller.getRate());
+		for (int i = 0; i < 4; i++)
+			batch(controller, 50 * MS, 1 * MS, true);
+		assertEquals(1, controller.getRate());
+		for (int i = 0; i < 4; i++)
+			batch(controller, 50 * MS, 1 * MS, true);
+		assertEquals(5, controller.getRate()); // recovering once the server keeps up
+	}
+
+	/**
+	 * run a batch
+	 * @param controller
+	 * @param sinceLastBatch time passed since the last batch has been started
+	 * @param duration time the batch takes
+	 * @param full true, if the batch restores as many blocks as allowed
+	 */
+	protected void batch(ManualClockController controller, long sinceLastBatch, long duration, boolean full) {
+		controller.now += sinceLastBatch;
+		int rate = controller.startBatch();
+		controller.now += duration;
+		controller.endBatch(full ? rate : rate - 1);
+		controller.now -= duration; // next tick is counted from the start of this batch
+	}
+
+	/**
+	 * controller with a clock set by the test
+	 */
+	private static class ManualClockController extends RestoreRateController {
+		/**
+		 * current time
+		 */
+		private long now = 1L;
+
+		/**
+		 * Constructor
+		 * @param minRate
+		 * @param maxRate
+		 */
+		public ManualClockController(int minRate, int maxRate) {
+			super(minRate, maxRate);
+		}
+
+		/* (non-Javadoc)
+		 * @see de.beimax.simplespleef.game.arenarestoring.RestoreRateController#nanoTime()
+		 */
+		@Override
+		protected long nanoTime() {
+			return now;
+		}
+	}
+}
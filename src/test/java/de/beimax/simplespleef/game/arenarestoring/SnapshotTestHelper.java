@@ -0,0 +1,41 @@
+/**
+ *
+ */
+package de.beimax.simplespleef.game.arenarestoring;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import de.beimax.simplespleef.util.Cuboid;
+
+/**
+ * @author mkalus
+ * Helpers shared by snapshot tests
+ */
+class SnapshotTestHelper {
+	/**
+	 * @param cuboid
+	 * @return snapshot of cuboid
+	 * @throws IOException
+	 */
+	static byte[] write(Cuboid cuboid) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ArenaSnapshotWriter.write(cuboid, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * @param world
+	 * @param cuboid
+	 * @return packed blocks of the bounding box [x][y][z]
+	 */
+	static int[][][] copy(FakeWorld world, Cuboid cuboid) {
+		int[] coords = cuboid.getCoords();
+		int[][][] blocks = new int[coords[3] - coords[0] + 1][coords[4] - coords[1] + 1][coords[5] - coords[2] + 1];
+		for (int x = 0; x < blocks.length; x++)
+			for (int y = 0; y < blocks[x].length; y++)
+				for (int z = 0; z < blocks[x][y].length; z++)
+					blocks[x][y][z] = world.get(coords[0] + x, coords[1] + y, coords[2] + z);
+		return blocks;
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ *
+ */
+package de.beimax.simplespleef.game.floortracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.bukkit.World;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author mkalus
+ *
+ */
+public class BlockChangeBatchTest {
+	/**
+	 * worlds of changes
+	 */
+	private World world, nether;
+
+	/**
+	 * workers causing changes
+	 */
+	private FloorWorker dissolver, repairer;
+
+	/**
+	 * changes
+	 */
+	private BlockChangeBatch batch;
+
+	@Before
+	public void setUp() {
+		world = createWorld("world");
+		nether = createWorld("world_nether");
+		dissolver = new FloorDissolveWorker(0, 1.0, null);
+		repairer = new FloorRepairWorker(0, 1.0, null);
+		batch = new BlockChangeBatch();
+		batch.add(world, 0, 60, 0, 0, (byte) 0, 35, (byte) 14, 1, null); // player digs
+		batch.add(world, 5, 60, 5, 0, (byte) 0, 35, (byte) 1, 2, dissolver);
+		batch.add(world, 5, 60, 5, 35, (byte) 1, 0, (byte) 0, 3, repairer);
+		batch.add(nether, 0, 60, 0, 0, (byte) 0, 87, (byte) 0, 4, null);
+		batch.add(world, 100, 60, 100, 0, (byte) 0, 1, (byte) 0, 5, null);
+	}
+
+	@Test
+	public void testSelectAll() {
+		assertEquals(5, batch.select(null, null, null));
+		assertEquals(5, batch.size());
+		// order and values are kept
+		for (int i = 0; i < 5; i++)
+			assertEquals(i + 1, batch.getSequence(i));
+		assertSame(nether, batch.getWorld(3));
+		assertEquals(35, batch.getTypeId(2));
+		assertEquals(1, batch.getData(2));
+		assertEquals(35, batch.getOldTypeId(0));
+		assertEquals(14, batch.getOldData(0));
+	}
+
+	@Test
+	public void testSelectWorld() {
+		assertEquals(4, batch.select(world, null, null));
+		for (int i = 0; i < batch.size(); i++)
+			assertSame(world, batch.getWorld(i));
+		assertEquals(1, batch.select(nether, null, null));
+		assertEquals(4, batch.getSequence(0));
+	}
+
+	@Test
+	public void testSelectArea() {
+		assertEquals(3, batch.select(world, new int[] {0, 60, 0, 10, 60, 10}, null));
+		assertEquals(1, batch.select(world, new int[] {1, 0, 1, 10, 255, 10}, repairer));
+		assertEquals(2, batch.getSequence(0));
+		assertEquals(1, batch.select(world, new int[] {100, 60, 100, 100, 60, 100}, null));
+		assertEquals(5, batch.getSequence(0));
+		// outside of all changes
+		assertEquals(0, batch.select(null, new int[] {-10, 0, -10, -1, 255, -1}, null));
+		assertEquals(0, batch.size());
+	}
+
+	@Test
+	public void testExcludeSource() {
+		assertEquals(4, batch.select(null, null, dissolver));
+		for (int i = 0; i < batch.size(); i++)
+			assertTrue(batch.getSequence(i) != 2);
+	}
+
+	@Test
+	public void testGrowAndClear() {
+		batch.clear();
+		assertTrue(batch.isEmpty());
+		for (int i = 0; i < 1000; i++)
+			batch.add(world, i, 60, -i, 0, (byte) 0, 35, (byte) (i & 15), i, null);
+		assertEquals(1000, batch.select(world, null, null));
+		assertEquals(999, batch.getX(999));
+		assertEquals(-999, batch.getZ(999));
+		assertEquals(999 & 15, batch.getOldData(999));
+		assertEquals(10, batch.select(world, new int[] {10, 60, -19, 19, 60, -10}, null));
+	}
+
+	/**
+	 * @param name
+	 * @return world that only knows its name - batches compare worlds by identity
+	 */
+	private static World createWorld(final String name) {
+		return (World) Proxy.newProxyInstance(World.class.getClassLoader(), new Class<?>[]{World.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if (method.getName().equals("equals")) return proxy == args[0];
+				if (method.getName().equals("hashCode")) return System.identityHashCode(proxy);
+				if (method.getName().equals("getName") || method.getName().equals("toString")) return name;
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+}
@@ -0,0 +1,141 @@
+/**
+ *
+ */
+package de.beimax.simplespleef.game.floortracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.beimax.simplespleef.util.Cuboid;
+import de.beimax.simplespleef.util.CuboidImpl;
+import de.beimax.simplespleef.util.PackedBlock;
+
+/**
+ * @author mkalus
+ *
+ */
+public class DissolvePatternTest {
+	/**
+	 * floor of two layers, 9x7 blocks
+	 */
+	private Cuboid floor;
+
+	/**
+	 * positions of floor blocks
+	 */
+	private long[] positions;
+
+	@Before
+	public void setUp() {
+		floor = new CuboidImpl(null, -4, 60, 10, 4, 61, 16); // plans only need the bounds
+		positions = new long[9 * 2 * 7];
+		int i = 0;
+		for (int x = -4; x <= 4; x++)
+			for (int y = 60; y <= 61; y++)
+				for (int z = 10; z <= 16; z++)
+					positions[i++] = PackedBlock.packPosition(x, y, z);
+	}
+
+	@Test
+	public void testRandom() {
+		assertNull(DissolvePattern.createPlan("random", floor, positions, new Random(1)));
+		assertNull(DissolvePattern.createPlan(null, floor, positions, new Random(1)));
+	}
+
+	@Test
+	public void testEdge() {
+		int[] plan = DissolvePattern.createPlan("edge", floor, positions, new Random(1));
+		assertComplete(plan);
+		int lastRing = 0;
+		for (int offset : plan) {
+			int ring = ring(offset);
+			assertTrue(ring >= lastRing); // outer rings first
+			lastRing = ring;
+		}
+		assertEquals(3, lastRing);
+	}
+
+	@Test
+	public void testLayer() {
+		int[] plan = DissolvePattern.createPlan("LAYER", floor, positions, new Random(1));
+		assertComplete(plan);
+		for (int i = 0; i < plan.length; i++)
+			assertEquals(i < 63 ? 1 : 0, y(plan[i])); // top layer first
+	}
+
+	@Test
+	public void testSpiral() {
+		int[] plan = DissolvePattern.createPlan("spiral", floor, positions, new Random(1));
+		assertComplete(plan);
+		int lastRing = 0;
+		double lastAngle = -Math.PI;
+		for (int offset : plan) {
+			int ring = ring(offset);
+			double angle = Math.atan2(z(offset) - 3, x(offset) - 4);
+			assertTrue(ring >= lastRing);
+			if (ring == lastRing) assertTrue(angle >= lastAngle); // around the center within a ring
+			lastRing = ring;
+			lastAngle = angle;
+		}
+	}
+
+	@Test
+	public void testPositionsOutsideFloorSkipped() {
+		long[] more = new long[positions.length + 2];
+		System.arraycopy(positions, 0, more, 0, positions.length);
+		more[positions.length] = PackedBlock.packPosition(5, 60, 10);
+		more[positions.length + 1] = PackedBlock.packPosition(0, 59, 12);
+		assertComplete(DissolvePattern.createPlan("edge", floor, more, new Random(1)));
+	}
+
+	/**
+	 * check that plan contains every floor block exactly once
+	 * @param plan
+	 */
+	protected void assertComplete(int[] plan) {
+		assertEquals(positions.length, plan.length);
+		boolean[] seen = new boolean[positions.length];
+		for (int offset : plan) {
+			assertTrue(!seen[offset]);
+			seen[offset] = true;
+		}
+	}
+
+	/**
+	 * @param offset
+	 * @return relative x of offset
+	 */
+	protected int x(int offset) {
+		return offset / (2 * 7);
+	}
+
+	/**
+	 * @param offset
+	 * @return relative y of offset
+	 */
+	protected int y(int offset) {
+		return offset / 7 % 2;
+	}
+
+	/**
+	 * @param offset
+	 * @return relative z of offset
+	 */
+	protected int z(int offset) {
+		return offset % 7;
+	}
+
+	/**
+	 * @param offset
+	 * @return distance to nearest edge
+	 */
+	protected int ring(int offset) {
+		return Math.min(Math.min(x(offset), 8 - x(offset)), Math.min(z(offset), 6 - z(offset)));
+	}
+}
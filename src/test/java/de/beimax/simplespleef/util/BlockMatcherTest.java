@@ -0,0 +1,87 @@
+/**
+ * This file is part of the SimpleSpleef bukkit plugin.
+ * Copyright (C) 2011 Maximilian Kalus
+ * See http://dev.bukkit.org/server-mods/simple-spleef/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package de.beimax.simplespleef.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * @author mkalus
+ *
+ */
+public class BlockMatcherTest {
+	@Test
+	public void testMatches() {
+		char[] masks = new char[36];
+		masks[1] = BlockMatcher.ANY_DATA;
+		masks[35] = (char) (1 << 14 | 1 << 0);
+		BlockMatcher matcher = new BlockMatcher(masks);
+		assertFalse(matcher.isEmpty());
+		assertTrue(matcher.matches(1, (byte) 0));
+		assertTrue(matcher.matches(1, (byte) 7));
+		assertTrue(matcher.matches(1, (byte) -1)); // any data means any data
+		assertTrue(matcher.matches(35, (byte) 14));
+		assertTrue(matcher.matches(35, (byte) 0));
+		assertFalse(matcher.matches(35, (byte) 13));
+		assertFalse(matcher.matches(35, (byte) 16));
+		assertFalse(matcher.matches(0, (byte) 0));
+		assertFalse(matcher.matches(-1, (byte) 0));
+		assertFalse(matcher.matches(36, (byte) 0));
+		assertFalse(matcher.matches(null));
+	}
+
+	@Test
+	public void testEmpty() {
+		assertTrue(BlockMatcher.EMPTY.isEmpty());
+		assertFalse(BlockMatcher.EMPTY.matches(0, (byte) 0));
+		assertTrue(new BlockMatcher(new char[10]).isEmpty());
+		assertTrue(MaterialHelper.compileMatcher((String) null).isEmpty());
+	}
+
+	@Test
+	public void testCompileMatcher() {
+		BlockMatcher matcher = MaterialHelper.compileMatcher(Arrays.asList("WOOL:14", "1", "WOOL:3"));
+		assertTrue(matcher.matches(35, (byte) 14));
+		assertTrue(matcher.matches(35, (byte) 3));
+		assertFalse(matcher.matches(35, (byte) 0));
+		assertTrue(matcher.matches(1, (byte) 0));
+		assertTrue(matcher.matches(1, (byte) 5));
+
+		matcher = MaterialHelper.compileMatcher("WOOL");
+		for (byte data = 0; data < 16; data++)
+			assertTrue(matcher.matches(35, data));
+	}
+
+	@Test
+	public void testInvalidDataIgnored() {
+		// data values above 15 do not exist for blocks and must not turn into "any data"
+		BlockMatcher matcher = MaterialHelper.compileMatcher("WOOL:20");
+		assertTrue(matcher.isEmpty());
+		for (byte data = 0; data < 16; data++)
+			assertFalse(matcher.matches(35, data));
+
+		matcher = MaterialHelper.compileMatcher(Arrays.asList("WOOL:20", "WOOL:4"));
+		assertTrue(matcher.matches(35, (byte) 4));
+		assertFalse(matcher.matches(35, (byte) 5));
+	}
+}
@@ -0,0 +1,117 @@
+/**
+ * This file is part of the SimpleSpleef bukkit plugin.
+ * Copyright (C) 2011 Maximilian Kalus
+ * See http://dev.bukkit.org/server-mods/simple-spleef/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package de.beimax.simplespleef.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @author mkalus
+ *
+ */
+public class IndexedLongSetTest {
+	@Test
+	public void testAddRemove() {
+		IndexedLongSet set = new IndexedLongSet();
+		assertTrue(set.isEmpty());
+		assertTrue(set.add(1L));
+		assertTrue(set.add(2L));
+		assertTrue(set.add(3L));
+		assertFalse(set.add(2L));
+		assertEquals(3, set.size());
+
+		// removing from the middle moves the last element into the gap
+		assertTrue(set.remove(1L));
+		assertFalse(set.remove(1L));
+		assertFalse(set.contains(1L));
+		assertTrue(set.contains(2L));
+		assertTrue(set.contains(3L));
+		assertEquals(2, set.size());
+
+		assertTrue(set.remove(3L));
+		assertTrue(set.remove(2L));
+		assertTrue(set.isEmpty());
+		assertTrue(set.add(1L));
+		assertTrue(set.contains(1L));
+	}
+
+	@Test
+	public void testRandomOperations() {
+		// small range of values, so additions, removals and collisions in the table are frequent
+		IndexedLongSet set = new IndexedLongSet(4);
+		Set<Long> expected = new HashSet<Long>();
+		Random random = new Random(7);
+		for (int i = 0; i < 50000; i++) {
+			long value = PackedBlock.packPosition(random.nextInt(40) - 20, 60, random.nextInt(40) - 20);
+			if (random.nextInt(3) == 0) assertEquals(expected.remove(value), set.remove(value));
+			else assertEquals(expected.add(value), set.add(value));
+			assertEquals(expected.size(), set.size());
+		}
+		for (int x = -20; x < 20; x++)
+			for (int z = -20; z < 20; z++) {
+				long value = PackedBlock.packPosition(x, 60, z);
+				assertEquals(expected.contains(value), set.contains(value));
+			}
+	}
+
+	@Test
+	public void testGetRandom() {
+		IndexedLongSet set = new IndexedLongSet();
+		for (long value = -50; value < 50; value++)
+			set.add(value);
+		for (long value = -50; value < 50; value += 2)
+			set.remove(value);
+
+		Random random = new Random(3);
+		Set<Long> picked = new HashSet<Long>();
+		for (int i = 0; i < 2000; i++) {
+			long value = set.getRandom(random);
+			assertTrue(set.contains(value));
+			picked.add(value);
+		}
+		assertEquals(set.size(), picked.size()); // every element is reachable
+	}
+
+	@Test
+	public void testToArray() {
+		IndexedLongSet set = new IndexedLongSet();
+		Set<Long> expected = new HashSet<Long>();
+		for (long value = 0; value < 300; value++) {
+			set.add(value * 31);
+			expected.add(value * 31);
+		}
+		for (long value = 0; value < 300; value += 3) {
+			set.remove(value * 31);
+			expected.remove(value * 31);
+		}
+		long[] array = set.toArray();
+		assertEquals(expected.size(), array.length);
+		Set<Long> actual = new HashSet<Long>();
+		for (long value : array)
+			actual.add(value);
+		assertEquals(expected, actual);
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * This file is part of the SimpleSpleef bukkit plugin.
+ * Copyright (C) 2011 Maximilian Kalus
+ * See http://dev.bukkit.org/server-mods/simple-spleef/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package de.beimax.simplespleef.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @author mkalus
+ *
+ */
+public class LongHashSetTest {
+	@Test
+	public void testAddContains() {
+		LongHashSet set = new LongHashSet();
+		assertTrue(set.add(0L));
+		assertTrue(set.add(-1L));
+		assertFalse(set.add(0L));
+		assertTrue(set.contains(0L));
+		assertTrue(set.contains(-1L));
+		assertFalse(set.contains(1L));
+		assertEquals(2, set.size());
+	}
+
+	@Test
+	public void testEmptyMarker() {
+		// value used to mark empty slots has to work like any other
+		LongHashSet set = new LongHashSet();
+		assertFalse(set.contains(Long.MIN_VALUE));
+		assertTrue(set.add(Long.MIN_VALUE));
+		assertFalse(set.add(Long.MIN_VALUE));
+		assertTrue(set.contains(Long.MIN_VALUE));
+		assertEquals(1, set.size());
+	}
+
+	@Test
+	public void testGrowing() {
+		LongHashSet set = new LongHashSet(4);
+		Set<Long> expected = new HashSet<Long>();
+		Random random = new Random(1);
+		for (int i = 0; i < 10000; i++) {
+			// packed positions of a small area - many values collide in the lower bits
+			long value = PackedBlock.packPosition(random.nextInt(64) - 32, random.nextInt(8), random.nextInt(64) - 32);
+			assertEquals(expected.add(value), set.add(value));
+		}
+		assertEquals(expected.size(), set.size());
+		for (long value : expected)
+			assertTrue(set.contains(value));
+		assertFalse(set.contains(PackedBlock.packPosition(100, 0, 100)));
+	}
+}
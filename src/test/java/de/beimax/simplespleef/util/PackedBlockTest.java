@@ -0,0 +1,64 @@
+/**
+ * This file is part of the SimpleSpleef bukkit plugin.
+ * Copyright (C) 2011 Maximilian Kalus
+ * See http://dev.bukkit.org/server-mods/simple-spleef/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ **/
+package de.beimax.simplespleef.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author mkalus
+ *
+ */
+public class PackedBlockTest {
+	@Test
+	public void testPackBlock() {
+		int packed = PackedBlock.pack(35, (byte) 14);
+		assertEquals(35, PackedBlock.getTypeId(packed));
+		assertEquals(14, PackedBlock.getData(packed));
+
+		// type ids above 255 and the full data byte survive
+		packed = PackedBlock.pack(4095, (byte) -1);
+		assertEquals(4095, PackedBlock.getTypeId(packed));
+		assertEquals(-1, PackedBlock.getData(packed));
+	}
+
+	@Test
+	public void testPackPosition() {
+		int[][] positions = {
+				{0, 0, 0}, {1, 2, 3}, {-1, 0, -1}, {-1, -1, -1}, {15, 255, -16},
+				{-30000000, -1, 30000000}, {33554431, 2047, -33554432}, {-33554432, -2048, 33554431}
+		};
+		for (int[] position : positions) {
+			long packed = PackedBlock.packPosition(position[0], position[1], position[2]);
+			assertEquals(position[0], PackedBlock.getX(packed));
+			assertEquals(position[1], PackedBlock.getY(packed));
+			assertEquals(position[2], PackedBlock.getZ(packed));
+		}
+	}
+
+	@Test
+	public void testPositionsAreDistinct() {
+		// neighbours across zero must not collide
+		assertTrue(PackedBlock.packPosition(-1, 0, 0) != PackedBlock.packPosition(0, 0, -1));
+		assertTrue(PackedBlock.packPosition(0, -1, 0) != PackedBlock.packPosition(0, 0, -1));
+		assertTrue(PackedBlock.packPosition(0, 1, 0) != PackedBlock.packPosition(0, 0, 1));
+	}
+}